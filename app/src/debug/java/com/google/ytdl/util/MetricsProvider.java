@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+/**
+ * Serves the current {@link UploadMetrics} in debug builds, one row per counter and histogram.
+ * Counters only fill the count column. Only apps signed with the same key may query it.
+ */
+public class MetricsProvider extends ContentProvider {
+    private static final String[] COLUMNS =
+            {"name", "count", "sum", "min", "max", "p50", "p90", "p99"};
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        UploadMetrics metrics = UploadMetrics.getInstance();
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (UploadMetrics.Counter counter : UploadMetrics.Counter.values()) {
+            cursor.addRow(new Object[]{counter.name().toLowerCase(), metrics.get(counter),
+                    null, null, null, null, null, null});
+        }
+        for (UploadMetrics.Stat stat : UploadMetrics.Stat.values()) {
+            UploadMetrics.Histogram histogram = metrics.getHistogram(stat);
+            cursor.addRow(new Object[]{stat.name().toLowerCase(), histogram.count(),
+                    histogram.sum(), histogram.min(), histogram.max(), histogram.percentile(50),
+                    histogram.percentile(90), histogram.percentile(99)});
+        }
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "vnd.android.cursor.dir/vnd.com.google.ytdl.metrics";
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Metrics are read-only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Metrics are read-only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Metrics are read-only");
+    }
+}
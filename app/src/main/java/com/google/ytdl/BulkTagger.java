@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.Video;
+import com.google.api.services.youtube.model.VideoSnippet;
+import com.google.ytdl.util.ApiFields;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adds the direct-tagging keywords to many videos at once. Current snippets are read with one
+ * videos.list call per 50 IDs, videos that already carry the playlist keyword are skipped, and the
+ * remaining updates are sent as HTTP batch requests.
+ */
+public class BulkTagger {
+    private static final String TAG = "BulkTagger";
+    /**
+     * most IDs a single videos.list request accepts
+     */
+    private static final int MAX_IDS_PER_REQUEST = 50;
+
+    private final YouTube mYouTube;
+    private final int mBatchSize;
+    private final long mBatchIntervalMs;
+
+    /**
+     * @param batchSize       updates sent together in one batch request
+     * @param batchIntervalMs shortest time between the starts of two batches, to pace quota use
+     */
+    public BulkTagger(YouTube youtube, int batchSize, long batchIntervalMs) {
+        mYouTube = youtube;
+        mBatchSize = batchSize;
+        mBatchIntervalMs = batchIntervalMs;
+    }
+
+    /**
+     * Tags the given videos. Blocks until every video has a result.
+     *
+     * @param keyword  tag that marks a video as submitted, its presence skips the video
+     * @param keywords tags to add, including {@code keyword}
+     * @return one result per video, in the order given
+     */
+    public List<Result> tag(Collection<String> videoIds, String keyword, List<String> keywords)
+            throws IOException {
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        for (String videoId : videoIds) {
+            results.put(videoId, new Result(videoId, Status.FAILED, "Video not found"));
+        }
+
+        List<Video> updates = new ArrayList<Video>();
+        for (Video video : fetchSnippets(new ArrayList<String>(results.keySet()))) {
+            VideoSnippet snippet = video.getSnippet();
+            List<String> tags = snippet.getTags();
+            if (tags != null && tags.contains(keyword)) {
+                results.put(video.getId(), new Result(video.getId(), Status.ALREADY_TAGGED, null));
+                continue;
+            }
+            List<String> newTags = tags == null ? new ArrayList<String>() : new ArrayList<String>(tags);
+            for (String tag : keywords) {
+                if (!newTags.contains(tag)) {
+                    newTags.add(tag);
+                }
+            }
+            snippet.setTags(newTags);
+            updates.add(new Video().setId(video.getId()).setSnippet(snippet));
+        }
+
+        for (int i = 0; i < updates.size(); i += mBatchSize) {
+            long start = SystemClock.elapsedRealtime();
+            sendBatch(updates.subList(i, Math.min(updates.size(), i + mBatchSize)), results);
+            long wait = mBatchIntervalMs - (SystemClock.elapsedRealtime() - start);
+            if (i + mBatchSize < updates.size() && wait > 0) {
+                SystemClock.sleep(wait);
+            }
+        }
+        return new ArrayList<Result>(results.values());
+    }
+
+    /**
+     * Reads the full current snippets, updating with a partial one would clear the fields left out.
+     */
+    private List<Video> fetchSnippets(List<String> videoIds) throws IOException {
+        List<Video> videos = new ArrayList<Video>(videoIds.size());
+        for (int i = 0; i < videoIds.size(); i += MAX_IDS_PER_REQUEST) {
+            List<String> ids = videoIds.subList(i, Math.min(videoIds.size(), i + MAX_IDS_PER_REQUEST));
+            List<Video> items = mYouTube.videos().list("snippet")
+                    .setId(TextUtils.join(",", ids))
+                    .setFields(ApiFields.TAGGABLE_SNIPPETS).execute().getItems();
+            if (items != null) {
+                videos.addAll(items);
+            }
+        }
+        return videos;
+    }
+
+    private void sendBatch(List<Video> updates, final Map<String, Result> results)
+            throws IOException {
+        BatchRequest batch = mYouTube.batch();
+        batch.setBatchUrl(new GenericUrl(mYouTube.getRootUrl() + "batch/youtube/v3"));
+        for (final Video update : updates) {
+            mYouTube.videos().update("snippet", update).setFields(ApiFields.VIDEO_ID)
+                    .queue(batch, new JsonBatchCallback<Video>() {
+                @Override
+                public void onSuccess(Video video, HttpHeaders responseHeaders) {
+                    results.put(update.getId(), new Result(update.getId(), Status.TAGGED, null));
+                }
+
+                @Override
+                public void onFailure(GoogleJsonError e, HttpHeaders responseHeaders) {
+                    Log.e(TAG, "Tagging " + update.getId() + " failed: " + e.getMessage());
+                    results.put(update.getId(),
+                            new Result(update.getId(), Status.FAILED, e.getMessage()));
+                }
+            });
+        }
+        try {
+            batch.execute();
+        } catch (UserRecoverableAuthIOException e) {
+            throw e;
+        } catch (IOException e) {
+            // The batch as a whole failed, later batches may still go through.
+            Log.e(TAG, "Tagging batch failed", e);
+            for (Video update : updates) {
+                if (results.get(update.getId()).status == Status.FAILED) {
+                    results.put(update.getId(),
+                            new Result(update.getId(), Status.FAILED, e.getMessage()));
+                }
+            }
+        }
+    }
+
+    public enum Status {
+        TAGGED, ALREADY_TAGGED, FAILED
+    }
+
+    /**
+     * Outcome of tagging one video.
+     */
+    public static class Result {
+        public final String videoId;
+        public final Status status;
+        /**
+         * why tagging failed, or null
+         */
+        public final String error;
+
+        Result(String videoId, Status status, String error) {
+            this.videoId = videoId;
+            this.status = status;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl;
+
+import android.util.Log;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.EmptyContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.json.JsonHttpContent;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.Video;
+import com.google.ytdl.util.BandwidthLimiter;
+import com.google.ytdl.util.ChunkSizer;
+import com.google.ytdl.util.FileChannelContent;
+import com.google.ytdl.util.UploadConstraints;
+import com.google.ytdl.util.UploadMetrics;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uploads a video with the resumable upload protocol, see
+ * https://developers.google.com/youtube/v3/guides/using_resumable_upload_protocol
+ * <p/>
+ * The file is sent in chunks sized by {@link ChunkSizer}, each streamed from its
+ * {@link FileChannel} by a {@link FileChannelContent} instead of being read into memory first.
+ */
+public class ChunkedUploader {
+    private static final String TAG = "ChunkedUploader";
+    private static final String VIDEO_FILE_FORMAT = "video/*";
+    /**
+     * Returned for every chunk but the last, see "Resume Incomplete" in the protocol guide.
+     */
+    private static final int STATUS_RESUME_INCOMPLETE = 308;
+    /**
+     * start of the Range header of a "Resume Incomplete" response, the server always keeps a prefix
+     */
+    private static final String COMMITTED_RANGE_PREFIX = "bytes=0-";
+
+    private final YouTube mYouTube;
+    private final HttpRequestFactory mRequestFactory;
+    private final ChunkSizer mChunkSizer;
+    private final List<Listener> mListeners = new ArrayList<Listener>(2);
+    private final UploadMetrics mMetrics = UploadMetrics.getInstance();
+    private BandwidthLimiter mBandwidthLimiter;
+    private UploadConstraints mConstraints;
+
+    public ChunkedUploader(YouTube youtube) {
+        this(youtube, new ChunkSizer());
+    }
+
+    ChunkedUploader(YouTube youtube, ChunkSizer chunkSizer) {
+        mYouTube = youtube;
+        mRequestFactory = youtube.getRequestFactory();
+        mChunkSizer = chunkSizer;
+    }
+
+    /**
+     * Parses the last committed byte out of a "Range: bytes=0-N" header. A missing or malformed
+     * header counts as nothing committed, the upload then starts over rather than skip bytes.
+     */
+    private static long committedOffset(HttpResponse response) {
+        String range = response.getHeaders().getRange();
+        if (range == null) {
+            return 0;
+        }
+        if (range.startsWith(COMMITTED_RANGE_PREFIX)) {
+            try {
+                long last = Long.parseLong(range.substring(COMMITTED_RANGE_PREFIX.length()));
+                if (last >= 0) {
+                    return last + 1;
+                }
+            } catch (NumberFormatException e) {
+                // Handled below.
+            }
+        }
+        Log.w(TAG, "Ignoring malformed Range header: " + range);
+        return 0;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Makes every chunk wait for its share of a bandwidth budget before it is sent.
+     */
+    public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+        mBandwidthLimiter = bandwidthLimiter;
+    }
+
+    /**
+     * Holds every chunk back until the network and power state allow it to be sent.
+     */
+    public void setConstraints(UploadConstraints constraints) {
+        mConstraints = constraints;
+    }
+
+    /**
+     * Starts a resumable upload session for the given metadata.
+     *
+     * @param fields partial response mask for the video returned once the upload completes
+     * @return the session URL the media bytes are sent to
+     */
+    public String initiate(String parts, String fields, Video metadata, long fileSize)
+            throws IOException {
+        GenericUrl url = new GenericUrl(mYouTube.getRootUrl() + "upload/"
+                + mYouTube.getServicePath() + "videos");
+        url.set("uploadType", "resumable");
+        url.set("part", parts);
+        url.set("fields", fields);
+        HttpRequest request = mRequestFactory.buildPostRequest(url,
+                new JsonHttpContent(mYouTube.getJsonFactory(), metadata));
+        request.getHeaders().set("X-Upload-Content-Type", VIDEO_FILE_FORMAT);
+        request.getHeaders().set("X-Upload-Content-Length", fileSize);
+
+        long timer = UploadMetrics.startTimer();
+        HttpResponse response = execute(request);
+        try {
+            mChunkSizer.recordRoundTrip(elapsedMillis(timer));
+            mMetrics.stopTimer(UploadMetrics.Stat.INITIATE_MS, timer);
+            String sessionUrl = response.getHeaders().getLocation();
+            if (sessionUrl == null) {
+                throw new IOException("Upload initiation did not return a session URL");
+            }
+            for (Listener listener : mListeners) {
+                listener.onInitiated(sessionUrl);
+            }
+            return sessionUrl;
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    /**
+     * Sends the whole file to a freshly initiated session.
+     */
+    public Video upload(String sessionUrl, FileChannel channel, long fileSize) throws IOException {
+        return transfer(new GenericUrl(sessionUrl), channel, fileSize, 0);
+    }
+
+    /**
+     * Asks the server how much of the file it already has and sends the rest.
+     */
+    public Video resume(String sessionUrl, FileChannel channel, long fileSize) throws IOException {
+        mMetrics.increment(UploadMetrics.Counter.SESSIONS_RESUMED);
+        GenericUrl url = new GenericUrl(sessionUrl);
+        HttpRequest request = mRequestFactory.buildPutRequest(url, new EmptyContent());
+        request.getHeaders().setContentRange("bytes */" + fileSize);
+
+        long timer = UploadMetrics.startTimer();
+        HttpResponse response = execute(request);
+        long offset;
+        try {
+            mChunkSizer.recordRoundTrip(elapsedMillis(timer));
+            if (response.getStatusCode() != STATUS_RESUME_INCOMPLETE) {
+                // The last chunk made it before we lost track of the upload.
+                return response.parseAs(Video.class);
+            }
+            offset = committedOffset(response);
+        } finally {
+            response.disconnect();
+        }
+        Log.d(TAG, "Resuming upload at byte " + offset + " of " + fileSize);
+        return transfer(url, channel, fileSize, offset);
+    }
+
+    private Video transfer(GenericUrl url, FileChannel channel, long fileSize, long offset)
+            throws IOException {
+        while (true) {
+            // Chunks end at committed offsets, so waiting here never wastes bytes already sent.
+            if (mConstraints != null && !mConstraints.isSatisfied(fileSize)) {
+                for (Listener listener : mListeners) {
+                    listener.onWaitingForNetwork();
+                }
+                mConstraints.await(fileSize);
+            }
+            int length = nextChunkLength(offset, fileSize);
+            long end = offset + length;
+            HttpRequest request = mRequestFactory.buildPutRequest(url,
+                    new FileChannelContent(VIDEO_FILE_FORMAT, channel, offset, length));
+            request.getHeaders().setContentRange("bytes " + offset + "-" + (end - 1) + "/"
+                    + fileSize);
+
+            if (mBandwidthLimiter != null) {
+                mBandwidthLimiter.acquire(length);
+            }
+            long timer = UploadMetrics.startTimer();
+            HttpResponse response = execute(request);
+            try {
+                mChunkSizer.recordTransfer(length, elapsedMillis(timer));
+                recordChunk(length, System.nanoTime() - timer);
+                if (response.getStatusCode() != STATUS_RESUME_INCOMPLETE) {
+                    for (Listener listener : mListeners) {
+                        listener.onProgress(fileSize, fileSize);
+                    }
+                    return response.parseAs(Video.class);
+                }
+                // The server may keep less than was sent, the next chunk starts where it stopped.
+                offset = committedOffset(response);
+            } finally {
+                response.disconnect();
+            }
+            for (Listener listener : mListeners) {
+                listener.onProgress(offset, fileSize);
+            }
+        }
+    }
+
+    private static long elapsedMillis(long timer) {
+        return (System.nanoTime() - timer) / 1000000;
+    }
+
+    private void recordChunk(int length, long elapsedNanos) {
+        mMetrics.increment(UploadMetrics.Counter.CHUNKS);
+        mMetrics.add(UploadMetrics.Counter.BYTES_UPLOADED, length);
+        mMetrics.record(UploadMetrics.Stat.CHUNK_MS, elapsedNanos / 1000000);
+        if (elapsedNanos > 0) {
+            mMetrics.record(UploadMetrics.Stat.CHUNK_BYTES_PER_SECOND,
+                    length * 1000000000L / elapsedNanos);
+        }
+    }
+
+    private int nextChunkLength(long offset, long fileSize) {
+        return (int) Math.min(mChunkSizer.nextChunkSize(), fileSize - offset);
+    }
+
+    /**
+     * Executes the request, turning every response other than a success or "Resume Incomplete"
+     * into a {@link GoogleJsonResponseException}.
+     */
+    private HttpResponse execute(HttpRequest request) throws IOException {
+        request.setParser(mYouTube.getObjectParser());
+        request.setFollowRedirects(false);
+        request.setThrowExceptionOnExecuteError(false);
+        HttpResponse response = request.execute();
+        if (!response.isSuccessStatusCode()
+                && response.getStatusCode() != STATUS_RESUME_INCOMPLETE) {
+            throw GoogleJsonResponseException.from(mYouTube.getJsonFactory(), response);
+        }
+        return response;
+    }
+
+    public interface Listener {
+        public void onInitiated(String sessionUrl);
+
+        public void onProgress(long bytesUploaded, long totalBytes);
+
+        /**
+         * Called when the upload pauses until the network or power state allows it to go on.
+         */
+        public void onWaitingForNetwork();
+    }
+}
@@ -26,4 +26,34 @@ public class Constants {
     // playlist ID for the app to work
     public static final String UPLOAD_PLAYLIST = "Replace me with the playlist ID you want to upload into";
     public static final String APP_NAME = "ytd-android";
+    // Number of uploads that may run at the same time
+    public static final int MAX_CONCURRENT_UPLOADS = 2;
+    // Upload bandwidth in bytes per second shared by all running uploads, 0 for no limit
+    public static final long UPLOAD_BANDWIDTH_BUDGET = 0;
+    // Upload progress notifications are posted at most this often
+    public static final long PROGRESS_NOTIFICATION_INTERVAL_MS = 500;
+    // and only once progress has moved by at least this many percent
+    public static final int PROGRESS_NOTIFICATION_STEP_PERCENT = 1;
+    // Tag updates sent together in one batch request when tagging many videos
+    public static final int TAG_BATCH_SIZE = 20;
+    // Shortest time between two tagging batches, keeps bulk tagging from burning through quota
+    public static final long TAG_BATCH_INTERVAL_MS = 1000;
+    // Files larger than this many bytes wait for an unmetered network, -1 to upload anything on any
+    // network
+    public static final long UPLOAD_UNMETERED_ABOVE_BYTES = 100 * 1024 * 1024;
+    // Uploads wait while the network's estimated upstream bandwidth in bytes per second is lower
+    public static final long UPLOAD_MIN_BANDWIDTH = 16 * 1024;
+    // Whether uploads only run while the device is charging
+    public static final boolean UPLOAD_REQUIRES_CHARGING = false;
+    // Whether videos are re-encoded to the profile below before they are uploaded, needs API 18
+    public static final boolean TRANSCODE_UPLOADS = false;
+    // Height of landscape, or width of portrait, transcoded videos in pixels
+    public static final int TRANSCODE_MAX_HEIGHT = 720;
+    // Video bitrate of transcoded videos in bits per second, the audio track is copied as it is
+    public static final int TRANSCODE_VIDEO_BITRATE = 2500000;
+    public static final int TRANSCODE_FRAME_RATE = 30;
+    // Seconds between key frames of transcoded videos
+    public static final int TRANSCODE_I_FRAME_INTERVAL = 1;
+    // Threads the image request queue downloads on, Volley's default is 4
+    public static final int NETWORK_THREAD_POOL_SIZE = 4;
 }
@@ -28,7 +28,6 @@ import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.provider.MediaStore;
 import android.support.v4.content.LocalBroadcastManager;
-import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -42,33 +41,22 @@ import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.android.volley.toolbox.ImageLoader;
 import com.google.android.gms.common.GooglePlayServicesUtil;
-import com.google.api.client.extensions.android.http.AndroidHttp;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GooglePlayServicesAvailabilityIOException;
 import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.client.util.ExponentialBackOff;
 import com.google.api.services.youtube.YouTube;
-import com.google.api.services.youtube.model.ChannelListResponse;
-import com.google.api.services.youtube.model.PlaylistItem;
-import com.google.api.services.youtube.model.PlaylistItemListResponse;
-import com.google.api.services.youtube.model.Video;
-import com.google.api.services.youtube.model.VideoListResponse;
-import com.google.api.services.youtube.model.VideoSnippet;
-import com.google.ytdl.util.NetworkSingleton;
 import com.google.ytdl.util.Upload;
+import com.google.ytdl.util.UploadsPlaylistResolver;
 import com.google.ytdl.util.Utils;
 import com.google.ytdl.util.VideoData;
+import com.google.ytdl.util.VideoStore;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -93,15 +81,13 @@ public class MainActivity extends Activity implements
     private static final int RESULT_VIDEO_CAP = 5;
     private static final int REQUEST_DIRECT_TAG = 6;
     private static final String TAG = "MainActivity";
-    final HttpTransport transport = AndroidHttp.newCompatibleTransport();
-    final JsonFactory jsonFactory = new GsonFactory();
     GoogleAccountCredential credential;
-    private ImageLoader mImageLoader;
     private String mChosenAccountName;
     private Uri mFileURI = null;
     private VideoData mVideoData;
     private UploadBroadcastReceiver broadcastReceiver;
     private UploadsListFragment mUploadsListFragment;
+    private UploadsPager mUploadsPager;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -117,8 +103,6 @@ public class MainActivity extends Activity implements
         } else {
             setContentView(R.layout.activity_main);
 
-            ensureLoader();
-
             credential = GoogleAccountCredential.usingOAuth2(
                     getApplicationContext(), Arrays.asList(Auth.SCOPES));
             // set exponential backoff policy
@@ -135,6 +119,9 @@ public class MainActivity extends Activity implements
             mUploadsListFragment = (UploadsListFragment) getFragmentManager()
                     .findFragmentById(R.id.list_fragment);
 
+            // Pick up uploads that were interrupted when the process was last killed.
+            UploadService.resumePending(this);
+
         }
     }
 
@@ -231,13 +218,6 @@ public class MainActivity extends Activity implements
                 broadcastReceiver, intentFilter);
     }
 
-    private void ensureLoader() {
-        if (mImageLoader == null) {
-            // Get the ImageLoader through your singleton class.
-            mImageLoader = NetworkSingleton.getInstance(this).getImageLoader();
-        }
-    }
-
     private void loadAccount() {
         SharedPreferences sp = PreferenceManager
                 .getDefaultSharedPreferences(this);
@@ -268,6 +248,9 @@ public class MainActivity extends Activity implements
         }
         if (isFinishing()) {
             // mHandler.removeCallbacksAndMessages(null);
+            if (mUploadsPager != null) {
+                mUploadsPager.cancel();
+            }
         }
     }
 
@@ -287,6 +270,9 @@ public class MainActivity extends Activity implements
             case R.id.menu_accounts:
                 chooseAccount();
                 return true;
+            case R.id.menu_tag_all:
+                tagVideos(mUploadsListFragment.getVideos());
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
@@ -336,6 +322,9 @@ public class MainActivity extends Activity implements
                     String accountName = data.getExtras().getString(
                             AccountManager.KEY_ACCOUNT_NAME);
                     if (accountName != null) {
+                        if (mChosenAccountName != null && !mChosenAccountName.equals(accountName)) {
+                            UploadsPlaylistResolver.getInstance(this).invalidate(mChosenAccountName);
+                        }
                         mChosenAccountName = accountName;
                         credential.setSelectedAccountName(accountName);
                         saveAccount();
@@ -355,35 +344,84 @@ public class MainActivity extends Activity implements
     }
 
     private void directTag(final VideoData video) {
-        final Video updateVideo = new Video();
-        VideoSnippet snippet = video
-                .addTags(Arrays.asList(
-                        Constants.DEFAULT_KEYWORD,
-                        Upload.generateKeywordFromPlaylistId(Constants.UPLOAD_PLAYLIST)));
-        updateVideo.setSnippet(snippet);
-        updateVideo.setId(video.getYouTubeId());
-
-        new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
+        tagVideos(Collections.singletonList(video));
+    }
 
-                YouTube youtube = new YouTube.Builder(transport, jsonFactory,
-                        credential).setApplicationName(Constants.APP_NAME)
-                        .build();
+    /**
+     * Adds the direct-tagging keywords to the given videos in batches and reports the outcome.
+     */
+    private void tagVideos(List<VideoData> videos) {
+        if (mChosenAccountName == null || videos.isEmpty()) {
+            return;
+        }
+        final List<String> videoIds = new ArrayList<String>(videos.size());
+        for (VideoData video : videos) {
+            videoIds.add(video.getYouTubeId());
+        }
+        final String keyword = Upload.generateKeywordFromPlaylistId(Constants.UPLOAD_PLAYLIST);
+        final BulkTagger tagger = new BulkTagger(
+                YouTubeClients.getInstance(this).get(mChosenAccountName),
+                Constants.TAG_BATCH_SIZE, Constants.TAG_BATCH_INTERVAL_MS);
+        new AsyncTask<Void, Void, List<BulkTagger.Result>>() {
+            @Override
+            protected List<BulkTagger.Result> doInBackground(Void... voids) {
                 try {
-                    youtube.videos().update("snippet", updateVideo).execute();
+                    return tagger.tag(videoIds, keyword,
+                            Arrays.asList(Constants.DEFAULT_KEYWORD, keyword));
                 } catch (UserRecoverableAuthIOException e) {
                     startActivityForResult(e.getIntent(), REQUEST_AUTHORIZATION);
+                    return null;
                 } catch (IOException e) {
                     Log.e(TAG, e.getMessage());
+                    // Nothing was tagged, report every video as failed.
+                    List<BulkTagger.Result> failed = new ArrayList<BulkTagger.Result>();
+                    for (String videoId : videoIds) {
+                        failed.add(new BulkTagger.Result(videoId, BulkTagger.Status.FAILED,
+                                e.getMessage()));
+                    }
+                    return failed;
                 }
-                return null;
             }
 
+            @Override
+            protected void onPostExecute(List<BulkTagger.Result> results) {
+                if (results == null) {
+                    // The user is asked to authorize the app instead.
+                    return;
+                }
+                if (results.size() == 1) {
+                    showTagResult(results.get(0));
+                    return;
+                }
+                int tagged = 0;
+                int skipped = 0;
+                for (BulkTagger.Result result : results) {
+                    if (result.status == BulkTagger.Status.TAGGED) {
+                        tagged++;
+                    } else if (result.status == BulkTagger.Status.ALREADY_TAGGED) {
+                        skipped++;
+                    }
+                }
+                Toast.makeText(MainActivity.this, getString(R.string.videos_tagged, tagged,
+                        skipped, results.size() - tagged - skipped), Toast.LENGTH_LONG).show();
+            }
         }.execute((Void) null);
-        Toast.makeText(this,
-                R.string.video_submitted_to_ytdl, Toast.LENGTH_LONG)
-                .show();
+    }
+
+    private void showTagResult(BulkTagger.Result result) {
+        String message;
+        switch (result.status) {
+            case TAGGED:
+                message = getString(R.string.video_submitted_to_ytdl);
+                break;
+            case ALREADY_TAGGED:
+                message = getString(R.string.video_already_submitted_to_ytdl);
+                break;
+            default:
+                message = getString(R.string.video_submission_failed, result.error);
+                break;
+        }
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
     }
 
     @Override
@@ -397,101 +435,55 @@ public class MainActivity extends Activity implements
             return;
         }
 
-        setProgressBarIndeterminateVisibility(true);
-        new AsyncTask<Void, Void, List<VideoData>>() {
+        if (mUploadsPager != null) {
+            mUploadsPager.cancel();
+        }
+        YouTube youtube = YouTubeClients.getInstance(this).get(mChosenAccountName);
+        final VideoStore store = VideoStore.getInstance(this);
+        final String accountName = mChosenAccountName;
+        mUploadsPager = new UploadsPager(youtube, store,
+                UploadsPlaylistResolver.getInstance(this), accountName, new UploadsPager.Callbacks() {
             @Override
-            protected List<VideoData> doInBackground(Void... voids) {
-
-                YouTube youtube = new YouTube.Builder(transport, jsonFactory,
-                        credential).setApplicationName(Constants.APP_NAME)
-                        .build();
-
-                try {
-                    /*
-                     * Now that the user is authenticated, the app makes a
-					 * channels list request to get the authenticated user's
-					 * channel. Returned with that data is the playlist id for
-					 * the uploaded videos.
-					 * https://developers.google.com/youtube
-					 * /v3/docs/channels/list
-					 */
-                    ChannelListResponse clr = youtube.channels()
-                            .list("contentDetails").setMine(true).execute();
-
-                    // Get the user's uploads playlist's id from channel list
-                    // response
-                    String uploadsPlaylistId = clr.getItems().get(0)
-                            .getContentDetails().getRelatedPlaylists()
-                            .getUploads();
-
-                    List<VideoData> videos = new ArrayList<VideoData>();
-
-                    // Get videos from user's upload playlist with a playlist
-                    // items list request
-                    PlaylistItemListResponse pilr = youtube.playlistItems()
-                            .list("id,contentDetails")
-                            .setPlaylistId(uploadsPlaylistId)
-                            .setMaxResults(20l).execute();
-                    List<String> videoIds = new ArrayList<String>();
-
-                    // Iterate over playlist item list response to get uploaded
-                    // videos' ids.
-                    for (PlaylistItem item : pilr.getItems()) {
-                        videoIds.add(item.getContentDetails().getVideoId());
-                    }
-
-                    // Get details of uploaded videos with a videos list
-                    // request.
-                    VideoListResponse vlr = youtube.videos()
-                            .list("id,snippet,status")
-                            .setId(TextUtils.join(",", videoIds)).execute();
-
-                    // Add only the public videos to the local videos list.
-                    for (Video video : vlr.getItems()) {
-                        if ("public".equals(video.getStatus()
-                                .getPrivacyStatus())) {
-                            VideoData videoData = new VideoData();
-                            videoData.setVideo(video);
-                            videos.add(videoData);
-                        }
-                    }
-
-                    // Sort videos by title
-                    Collections.sort(videos, new Comparator<VideoData>() {
-                        @Override
-                        public int compare(VideoData videoData,
-                                           VideoData videoData2) {
-                            return videoData.getTitle().compareTo(
-                                    videoData2.getTitle());
-                        }
-                    });
-
-                    return videos;
+            public void onPageLoaded(List<VideoData> changed, List<String> removedIds,
+                                     boolean hasMore) {
+                setProgressBarIndeterminateVisibility(false);
+                mUploadsListFragment.updateVideos(changed, removedIds);
+            }
 
-                } catch (final GooglePlayServicesAvailabilityIOException availabilityException) {
-                    showGooglePlayServicesAvailabilityErrorDialog(availabilityException
-                            .getConnectionStatusCode());
-                } catch (UserRecoverableAuthIOException userRecoverableException) {
+            @Override
+            public void onPageFailed(IOException e) {
+                setProgressBarIndeterminateVisibility(false);
+                if (e instanceof GooglePlayServicesAvailabilityIOException) {
+                    showGooglePlayServicesAvailabilityErrorDialog(
+                            ((GooglePlayServicesAvailabilityIOException) e)
+                                    .getConnectionStatusCode());
+                } else if (e instanceof UserRecoverableAuthIOException) {
                     startActivityForResult(
-                            userRecoverableException.getIntent(),
+                            ((UserRecoverableAuthIOException) e).getIntent(),
                             REQUEST_AUTHORIZATION);
-                } catch (IOException e) {
+                } else {
                     Utils.logAndShow(MainActivity.this, Constants.APP_NAME, e);
                 }
-                return null;
+            }
+        });
+        mUploadsListFragment.clearVideos();
+        setProgressBarIndeterminateVisibility(true);
+        // Draw what was stored last time right away, then revalidate it page by page.
+        final UploadsPager pager = mUploadsPager;
+        new AsyncTask<Void, Void, List<VideoData>>() {
+            @Override
+            protected List<VideoData> doInBackground(Void... voids) {
+                return store.getVideos(accountName);
             }
 
             @Override
             protected void onPostExecute(List<VideoData> videos) {
-                setProgressBarIndeterminateVisibility(false);
-
-                if (videos == null) {
+                if (pager != mUploadsPager) {
                     return;
                 }
-
-                mUploadsListFragment.setVideos(videos);
+                mUploadsListFragment.addVideos(videos);
+                onLoadMore();
             }
-
         }.execute((Void) null);
     }
 
@@ -503,9 +495,11 @@ public class MainActivity extends Activity implements
     }
 
     @Override
-    public ImageLoader onGetImageLoader() {
-        ensureLoader();
-        return mImageLoader;
+    public void onLoadMore() {
+        if (mUploadsPager != null && mUploadsPager.canLoadMore()) {
+            setProgressBarIndeterminateVisibility(true);
+            mUploadsPager.loadNextPage();
+        }
     }
 
     @Override
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.Video;
+import com.google.api.services.youtube.model.VideoProcessingDetails;
+import com.google.api.services.youtube.model.VideoProcessingDetailsProcessingProgress;
+import com.google.ytdl.util.ApiFields;
+import com.google.ytdl.util.UploadMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks uploaded videos until YouTube has finished processing them, so upload workers never wait
+ * on processing. All pending videos of an account are checked with one videos.list call per 50
+ * IDs, and the next check is timed from the processing time YouTube estimates.
+ */
+public class ProcessingPoller {
+    /**
+     * Indicates that the video is fully processed, see https://www.googleapis.com/discovery/v1/apis/youtube/v3/rpc
+     */
+    private static final String SUCCEEDED = "succeeded";
+    private static final String FAILED = "failed";
+    private static final String TERMINATED = "terminated";
+    private static final String TAG = "ProcessingPoller";
+    /**
+     * defines how long we'll wait for a video to finish processing
+     */
+    private static final long PROCESSING_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(20);
+    /**
+     * how often to poll when YouTube gives no estimate
+     */
+    private static final long DEFAULT_POLL_INTERVAL_MS = TimeUnit.SECONDS.toMillis(60);
+    private static final long MIN_POLL_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+    private static final long MAX_POLL_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+    /**
+     * most IDs a single videos.list request accepts
+     */
+    private static final int MAX_IDS_PER_REQUEST = 50;
+
+    private final Callbacks mCallbacks;
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+    /**
+     * pending videos by video ID
+     */
+    private final Map<String, Pending> mPending = new LinkedHashMap<String, Pending>();
+    private ScheduledFuture<?> mNextPoll;
+    private final Runnable mPoll = new Runnable() {
+        @Override
+        public void run() {
+            poll();
+        }
+    };
+
+    public ProcessingPoller(Callbacks callbacks) {
+        mCallbacks = callbacks;
+    }
+
+    /**
+     * Starts tracking an uploaded video. {@link Callbacks#onProcessed} is called once it is ready.
+     *
+     * @param trackedSince wall clock time processing started at in ms, kept across process
+     *                     restarts so the processing timeout still runs out
+     */
+    public synchronized void track(long uploadId, String account, String videoId,
+                                   long trackedSince) {
+        mPending.put(videoId, new Pending(uploadId, account, videoId, trackedSince));
+        if (mNextPoll == null || mNextPoll.getDelay(TimeUnit.MILLISECONDS) > MIN_POLL_INTERVAL_MS) {
+            schedule(MIN_POLL_INTERVAL_MS);
+        }
+    }
+
+    public synchronized boolean isIdle() {
+        return mPending.isEmpty();
+    }
+
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private void schedule(long delayMs) {
+        if (mNextPoll != null) {
+            mNextPoll.cancel(false);
+        }
+        mNextPoll = mExecutor.schedule(mPoll, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks every pending video once, package-private so tests don't have to wait for the
+     * schedule.
+     */
+    void poll() {
+        Map<String, List<String>> idsByAccount = new HashMap<String, List<String>>();
+        synchronized (this) {
+            mNextPoll = null;
+            for (Pending pending : mPending.values()) {
+                List<String> ids = idsByAccount.get(pending.account);
+                if (ids == null) {
+                    ids = new ArrayList<String>();
+                    idsByAccount.put(pending.account, ids);
+                }
+                ids.add(pending.videoId);
+            }
+        }
+
+        long timeLeftMs = -1;
+        try {
+            timeLeftMs = checkStatus(idsByAccount);
+        } catch (RuntimeException e) {
+            // A bad response or a failing callback must not end polling for every other video.
+            Log.e(TAG, "Error checking processing status", e);
+        } finally {
+            finishPoll(timeLeftMs);
+        }
+    }
+
+    /**
+     * Fetches the processing status of the given videos and reports the ones that are done.
+     *
+     * @return the shortest remaining processing time YouTube estimated in ms, or -1 if none
+     */
+    private long checkStatus(Map<String, List<String>> idsByAccount) {
+        long nextPollMs = MAX_POLL_INTERVAL_MS;
+        boolean haveEstimate = false;
+        for (Map.Entry<String, List<String>> account : idsByAccount.entrySet()) {
+            YouTube youtube = mCallbacks.getYouTube(account.getKey());
+            List<String> ids = account.getValue();
+            for (int i = 0; i < ids.size(); i += MAX_IDS_PER_REQUEST) {
+                List<String> batch = ids.subList(i, Math.min(ids.size(), i + MAX_IDS_PER_REQUEST));
+                List<Video> videos;
+                try {
+                    videos = youtube.videos().list("processingDetails")
+                            .setId(TextUtils.join(",", batch))
+                            .setFields(ApiFields.PROCESSING_STATUS)
+                            .execute().getItems();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error fetching video metadata", e);
+                    continue;
+                }
+                if (videos == null) {
+                    // None of them exist any more, they time out below.
+                    continue;
+                }
+                for (Video video : videos) {
+                    long timeLeftMs = handleStatus(video);
+                    if (timeLeftMs > 0) {
+                        nextPollMs = Math.min(nextPollMs, timeLeftMs);
+                        haveEstimate = true;
+                    }
+                }
+            }
+        }
+        return haveEstimate ? nextPollMs : -1;
+    }
+
+    /**
+     * Drops videos that took too long and schedules the next poll, or reports that polling is
+     * over.
+     */
+    private void finishPoll(long timeLeftMs) {
+        List<Pending> expired = new ArrayList<Pending>();
+        boolean idle;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Pending pending : mPending.values()) {
+                if (now - pending.trackedSince >= PROCESSING_TIMEOUT_MS) {
+                    expired.add(pending);
+                }
+            }
+            for (Pending pending : expired) {
+                mPending.remove(pending.videoId);
+            }
+
+            idle = mPending.isEmpty();
+            if (!idle && mNextPoll == null) {
+                schedule(Math.max(MIN_POLL_INTERVAL_MS,
+                        timeLeftMs > 0 ? timeLeftMs : DEFAULT_POLL_INTERVAL_MS));
+            }
+        }
+        for (Pending pending : expired) {
+            Log.d(TAG, "Bailing out polling for processing status of " + pending.videoId);
+            mCallbacks.onAbandoned(pending.uploadId, pending.videoId);
+        }
+        if (idle) {
+            mCallbacks.onIdle();
+        }
+    }
+
+    /**
+     * @return YouTube's estimate of the remaining processing time in ms, or -1 if there is none
+     */
+    private long handleStatus(Video video) {
+        VideoProcessingDetails details = video.getProcessingDetails();
+        String status = details == null ? null : details.getProcessingStatus();
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Processing status of " + video.getId() + " is " + status);
+        }
+        if (SUCCEEDED.equals(status) || FAILED.equals(status) || TERMINATED.equals(status)) {
+            Pending pending;
+            synchronized (this) {
+                pending = mPending.remove(video.getId());
+            }
+            if (pending != null) {
+                UploadMetrics.getInstance().record(UploadMetrics.Stat.PROCESSING_WAIT_MS,
+                        System.currentTimeMillis() - pending.trackedSince);
+                if (SUCCEEDED.equals(status)) {
+                    mCallbacks.onProcessed(pending.uploadId, pending.videoId);
+                } else {
+                    mCallbacks.onRejected(pending.uploadId, pending.videoId);
+                }
+            }
+            return -1;
+        }
+
+        VideoProcessingDetailsProcessingProgress progress =
+                details == null ? null : details.getProcessingProgress();
+        if (progress == null || progress.getTimeLeftMs() == null) {
+            return -1;
+        }
+        return progress.getTimeLeftMs().longValue();
+    }
+
+    public interface Callbacks {
+        public YouTube getYouTube(String account);
+
+        public void onProcessed(long uploadId, String videoId);
+
+        /**
+         * Called when YouTube failed or refused to process the video.
+         */
+        public void onRejected(long uploadId, String videoId);
+
+        /**
+         * Called when processing took too long to wait for, the video may still turn out fine.
+         */
+        public void onAbandoned(long uploadId, String videoId);
+
+        /**
+         * Called when no video is left to track.
+         */
+        public void onIdle();
+    }
+
+    private static class Pending {
+        final long uploadId;
+        final String account;
+        final String videoId;
+        final long trackedSince;
+
+        Pending(long uploadId, String account, String videoId, long trackedSince) {
+            this.uploadId = uploadId;
+            this.account = account;
+            this.videoId = videoId;
+            this.trackedSince = trackedSince;
+        }
+    }
+}
@@ -19,34 +19,35 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.media.ThumbnailUtils;
 import android.net.Uri;
-import android.provider.MediaStore.Video.Thumbnails;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.content.LocalBroadcastManager;
+import android.util.DisplayMetrics;
 import android.util.Log;
 
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.ImageLoader;
+
 import com.google.api.client.googleapis.extensions.android.gms.auth.GooglePlayServicesAvailabilityIOException;
 import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
-import com.google.api.client.googleapis.media.MediaHttpUploader;
-import com.google.api.client.googleapis.media.MediaHttpUploaderProgressListener;
-import com.google.api.client.http.InputStreamContent;
-import com.google.api.services.youtube.YouTube;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpStatusCodes;
 import com.google.api.services.youtube.model.Video;
-import com.google.api.services.youtube.model.VideoListResponse;
 import com.google.api.services.youtube.model.VideoSnippet;
 import com.google.api.services.youtube.model.VideoStatus;
+import com.google.ytdl.util.ApiFields;
+import com.google.ytdl.util.NetworkSingleton;
+import com.google.ytdl.util.ThumbnailCache;
 import com.google.ytdl.util.Upload;
+import com.google.ytdl.util.UploadMetrics;
+import com.google.ytdl.util.VideoData;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.List;
 
 
 /**
@@ -59,39 +60,57 @@ public class ResumableUpload {
      * Assigned to the upload
      */
     public static final String[] DEFAULT_KEYWORDS = {"MultiSquash", "Game"};
+    private static final String TAG = "UploadingActivity";
     /**
-     * Indicates that the video is fully processed, see https://www.googleapis.com/discovery/v1/apis/youtube/v3/rpc
+     * Returned when a resumable upload session has expired.
      */
-    private static final String SUCCEEDED = "succeeded";
-    private static final String TAG = "UploadingActivity";
+    private static final int STATUS_CODE_GONE = 410;
     private static int UPLOAD_NOTIFICATION_ID = 1001;
     private static int PLAYBACK_NOTIFICATION_ID = 1002;
-    /*
-     * Global instance of the format used for the video being uploaded (MIME type).
+    private static int DUPLICATE_NOTIFICATION_ID = 1003;
+    /**
+     * Height of the big picture in an expanded notification.
      */
-    private static String VIDEO_FILE_FORMAT = "video/*";
+    private static final int BIG_PICTURE_HEIGHT_DP = 256;
 
     /**
      * Uploads user selected video in the project folder to the user's YouTube account using OAuth2
-     * for authentication.
+     * for authentication. If a session URL from an earlier attempt is given, the upload continues
+     * from the last byte the server acknowledged. Errors are passed on to the caller, which decides
+     * whether to retry.
      */
 
-    public static String upload(YouTube youtube, final InputStream fileInputStream,
-                                final long fileSize, final Uri mFileUri, final String path, final Context context) {
-        final NotificationManager notifyManager =
-                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+    public static String upload(ChunkedUploader uploader, final FileChannel fileChannel,
+                                final long fileSize, final String sessionUrl,
+                                final Uri mFileUri, final Context context)
+            throws IOException {
+        // Uploads run concurrently, so each one gets its own notification tagged with its file.
+        final String notificationTag = mFileUri.toString();
         final NotificationCompat.Builder builder = new NotificationCompat.Builder(context);
 
         Intent notificationIntent = new Intent(context, ReviewActivity.class);
         notificationIntent.setData(mFileUri);
         notificationIntent.setAction(Intent.ACTION_VIEW);
-        Bitmap thumbnail = ThumbnailUtils.createVideoThumbnail(path, Thumbnails.MICRO_KIND);
         PendingIntent contentIntent = PendingIntent.getActivity(context,
                 0, notificationIntent, PendingIntent.FLAG_CANCEL_CURRENT);
         builder.setContentTitle(context.getString(R.string.youtube_upload))
                 .setContentText(context.getString(R.string.youtube_upload_started))
-                .setSmallIcon(R.drawable.ic_stat_device_access_video).setContentIntent(contentIntent).setStyle(new NotificationCompat.BigPictureStyle().bigPicture(thumbnail));
-        notifyManager.notify(UPLOAD_NOTIFICATION_ID, builder.build());
+                .setSmallIcon(R.drawable.ic_stat_device_access_video).setContentIntent(contentIntent);
+        final UploadProgressNotifier notifier =
+                new UploadProgressNotifier(context, builder, notificationTag, UPLOAD_NOTIFICATION_ID);
+        notifier.showStatus(R.string.youtube_upload_started);
+        // Decoding a frame can take a while, the upload doesn't wait for it.
+        final long thumbnailTimer = UploadMetrics.startTimer();
+        ThumbnailCache.getInstance(context).load(mFileUri, new ThumbnailCache.Callback() {
+            @Override
+            public void onThumbnail(Uri videoUri, Bitmap thumbnail) {
+                UploadMetrics.getInstance().stopTimer(UploadMetrics.Stat.THUMBNAIL_MS,
+                        thumbnailTimer);
+                if (thumbnail != null) {
+                    notifier.setThumbnail(thumbnail);
+                }
+            }
+        });
 
         String videoId = null;
         try {
@@ -126,78 +145,46 @@ public class ResumableUpload {
             // Set completed snippet to the video object.
             videoObjectDefiningMetadata.setSnippet(snippet);
 
-            InputStreamContent mediaContent =
-                    new InputStreamContent(VIDEO_FILE_FORMAT, new BufferedInputStream(fileInputStream));
-            mediaContent.setLength(fileSize);
-
       /*
        * The upload command includes: 1. Information we want returned after file is successfully
-       * uploaded. 2. Metadata we want associated with the uploaded video. 3. Video file itself.
+       * uploaded. 2. Metadata we want associated with the uploaded video. 3. Video file itself,
+       * which is sent in chunks over the resumable upload protocol.
        */
-            YouTube.Videos.Insert videoInsert =
-                    youtube.videos().insert("snippet,statistics,status", videoObjectDefiningMetadata,
-                            mediaContent);
-
-            // Set the upload type and add event listener.
-            MediaHttpUploader uploader = videoInsert.getMediaHttpUploader();
+            uploader.addListener(notifier);
 
-      /*
-       * Sets whether direct media upload is enabled or disabled. True = whole media content is
-       * uploaded in a single request. False (default) = resumable media upload protocol to upload
-       * in data chunks.
-       */
-            uploader.setDirectUploadEnabled(false);
-
-            MediaHttpUploaderProgressListener progressListener = new MediaHttpUploaderProgressListener() {
-                public void progressChanged(MediaHttpUploader uploader) throws IOException {
-                    switch (uploader.getUploadState()) {
-                        case INITIATION_STARTED:
-                            builder.setContentText(context.getString(R.string.initiation_started)).setProgress((int) fileSize,
-                                    (int) uploader.getNumBytesUploaded(), false);
-                            notifyManager.notify(UPLOAD_NOTIFICATION_ID, builder.build());
-                            break;
-                        case INITIATION_COMPLETE:
-                            builder.setContentText(context.getString(R.string.initiation_completed)).setProgress((int) fileSize,
-                                    (int) uploader.getNumBytesUploaded(), false);
-                            notifyManager.notify(UPLOAD_NOTIFICATION_ID, builder.build());
-                            break;
-                        case MEDIA_IN_PROGRESS:
-                            builder
-                                    .setContentTitle(context.getString(R.string.youtube_upload) +
-                                            (int) (uploader.getProgress() * 100) + "%")
-                                    .setContentText(context.getString(R.string.upload_in_progress))
-                                    .setProgress((int) fileSize, (int) uploader.getNumBytesUploaded(), false);
-                            notifyManager.notify(UPLOAD_NOTIFICATION_ID, builder.build());
-                            break;
-                        case MEDIA_COMPLETE:
-                            builder.setContentTitle(context.getString(R.string.yt_upload_completed))
-                                    .setContentText(context.getString(R.string.upload_completed))
-                                            // Removes the progress bar
-                                    .setProgress(0, 0, false);
-                            notifyManager.notify(UPLOAD_NOTIFICATION_ID, builder.build());
-                        case NOT_STARTED:
-                            Log.d(this.getClass().getSimpleName(), context.getString(R.string.upload_not_started));
-                            break;
+            Video returnedVideo = null;
+            if (sessionUrl != null) {
+                try {
+                    returnedVideo = uploader.resume(sessionUrl, fileChannel, fileSize);
+                } catch (GoogleJsonResponseException e) {
+                    if (e.getStatusCode() != HttpStatusCodes.STATUS_CODE_NOT_FOUND
+                            && e.getStatusCode() != STATUS_CODE_GONE) {
+                        throw e;
                     }
+                    Log.i(TAG, "Upload session expired, starting a new one");
                 }
-            };
-            uploader.setProgressListener(progressListener);
+            }
+            if (returnedVideo == null) {
+                notifier.showStatus(R.string.initiation_started);
+                String newSessionUrl = uploader.initiate("snippet,status", ApiFields.VIDEO_ID,
+                        videoObjectDefiningMetadata, fileSize);
 
-            // Execute upload.
-            Video returnedVideo = videoInsert.execute();
-            Log.d(TAG, "Video upload completed");
+                // Execute upload.
+                returnedVideo = uploader.upload(newSessionUrl, fileChannel, fileSize);
+            }
+            notifier.showCompleted();
             videoId = returnedVideo.getId();
-            Log.d(TAG, String.format("videoId = [%s]", videoId));
+            Log.d(TAG, "Video upload completed, videoId = [" + videoId + "]");
         } catch (final GooglePlayServicesAvailabilityIOException availabilityException) {
             Log.e(TAG, "GooglePlayServicesAvailabilityIOException", availabilityException);
-            notifyFailedUpload(context, context.getString(R.string.cant_access_play), notifyManager, builder);
+            throw availabilityException;
         } catch (UserRecoverableAuthIOException userRecoverableException) {
-            Log.i(TAG, String.format("UserRecoverableAuthIOException: %s",
-                    userRecoverableException.getMessage()));
+            Log.i(TAG, "UserRecoverableAuthIOException: " + userRecoverableException.getMessage());
+            // Ask the user to authorize while the caller waits to retry.
             requestAuth(context, userRecoverableException);
-        } catch (IOException e) {
-            Log.e(TAG, "IOException", e);
-            notifyFailedUpload(context, context.getString(R.string.please_try_again), notifyManager, builder);
+            throw userRecoverableException;
+        } finally {
+            notifier.finish();
         }
         return videoId;
     }
@@ -213,64 +200,86 @@ public class ResumableUpload {
     }
 
     private static void notifyFailedUpload(Context context, String message, NotificationManager notifyManager,
-                                           NotificationCompat.Builder builder) {
+                                           NotificationCompat.Builder builder, String notificationTag) {
         builder.setContentTitle(context.getString(R.string.yt_upload_failed))
                 .setContentText(message);
-        notifyManager.notify(UPLOAD_NOTIFICATION_ID, builder.build());
+        notifyManager.notify(notificationTag, UPLOAD_NOTIFICATION_ID, builder.build());
         Log.e(ResumableUpload.class.getSimpleName(), message);
     }
 
-    public static void showSelectableNotification(String videoId, Context context) {
-        Log.d(TAG, String.format("Posting selectable notification for video ID [%s]", videoId));
+    /**
+     * Replaces the progress notification of an upload that won't be retried any more.
+     */
+    public static void showFailedNotification(Uri fileUri, IOException cause, Context context) {
         final NotificationManager notifyManager =
                 (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        final NotificationCompat.Builder builder = new NotificationCompat.Builder(context);
-        Intent notificationIntent = new Intent(context, PlayActivity.class);
-        notificationIntent.putExtra(MainActivity.YOUTUBE_ID, videoId);
-        notificationIntent.setAction(Intent.ACTION_VIEW);
-
-        URL url;
-        try {
-            url = new URL("https://i1.ytimg.com/vi/" + videoId + "/mqdefault.jpg");
-            Bitmap thumbnail = BitmapFactory.decodeStream(url.openConnection().getInputStream());
-            PendingIntent contentIntent = PendingIntent.getActivity(context,
-                    0, notificationIntent, PendingIntent.FLAG_CANCEL_CURRENT);
-            builder.setContentTitle(context.getString(R.string.watch_your_video))
-                    .setContentText(context.getString(R.string.see_the_newly_uploaded_video)).setContentIntent(contentIntent).setSmallIcon(R.drawable.ic_stat_device_access_video).setStyle(new NotificationCompat.BigPictureStyle().bigPicture(thumbnail));
-            notifyManager.notify(PLAYBACK_NOTIFICATION_ID, builder.build());
-            Log.d(TAG, String.format("Selectable notification for video ID [%s] posted", videoId));
-        } catch (MalformedURLException e) {
-            Log.e(TAG, e.getMessage());
-        } catch (IOException e) {
-            Log.e(TAG, e.getMessage());
-        }
+        final NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
+                .setSmallIcon(R.drawable.ic_stat_device_access_video);
+        String message = context.getString(cause instanceof GooglePlayServicesAvailabilityIOException
+                ? R.string.cant_access_play : R.string.please_try_again);
+        notifyFailedUpload(context, message, notifyManager, builder, fileUri.toString());
     }
 
-
     /**
-     * @return url of thumbnail if the video is fully processed
+     * Tells that an upload was dropped because an earlier upload of the same video is still running.
      */
-    public static boolean checkIfProcessed(String videoId, YouTube youtube) {
-        try {
-            YouTube.Videos.List list = youtube.videos().list("processingDetails");
-            list.setId(videoId);
-            VideoListResponse listResponse = list.execute();
-            List<Video> videos = listResponse.getItems();
-            if (videos.size() == 1) {
-                Video video = videos.get(0);
-                String status = video.getProcessingDetails().getProcessingStatus();
-                Log.e(TAG, String.format("Processing status of [%s] is [%s]", videoId, status));
-                if (status.equals(SUCCEEDED)) {
-                    return true;
-                }
-            } else {
-                // can't find the video
-                Log.e(TAG, String.format("Can't find video with ID [%s]", videoId));
-                return false;
+    public static void showDuplicateNotification(Uri fileUri, Uri originalUri, Context context) {
+        NotificationManager notifyManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
+                .setSmallIcon(R.drawable.ic_stat_device_access_video)
+                .setContentTitle(context.getString(R.string.upload_not_started))
+                .setContentText(context.getString(R.string.duplicate_of_upload,
+                        originalUri.getLastPathSegment()));
+        notifyManager.notify(fileUri.toString(), DUPLICATE_NOTIFICATION_ID, builder.build());
+    }
+
+    public static void showSelectableNotification(final String videoId, Context context) {
+        Log.d(TAG, String.format("Posting selectable notification for video ID [%s]", videoId));
+        final Context appContext = context.getApplicationContext();
+        final NotificationManager notifyManager =
+                (NotificationManager) appContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        Intent notificationIntent = new Intent(appContext, PlayActivity.class);
+        notificationIntent.putExtra(MainActivity.YOUTUBE_ID, videoId);
+        notificationIntent.setAction(Intent.ACTION_VIEW);
+        PendingIntent contentIntent = PendingIntent.getActivity(appContext,
+                0, notificationIntent, PendingIntent.FLAG_CANCEL_CURRENT);
+        final NotificationCompat.Builder builder = new NotificationCompat.Builder(appContext)
+                .setContentTitle(appContext.getString(R.string.watch_your_video))
+                .setContentText(appContext.getString(R.string.see_the_newly_uploaded_video))
+                .setContentIntent(contentIntent).setSmallIcon(R.drawable.ic_stat_device_access_video);
+
+        // Decode no larger than the big picture is shown, the width of the screen and 256dp high.
+        DisplayMetrics metrics = appContext.getResources().getDisplayMetrics();
+        final int maxWidth = metrics.widthPixels;
+        final int maxHeight = (int) (BIG_PICTURE_HEIGHT_DP * metrics.density);
+        // The image pipeline shares its caches with the uploads grid and must be used on the main
+        // thread.
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                NetworkSingleton.getInstance(appContext).getImageLoader().get(
+                        VideoData.getThumbUri(videoId), new ImageLoader.ImageListener() {
+                            @Override
+                            public void onResponse(ImageLoader.ImageContainer response,
+                                                   boolean isImmediate) {
+                                if (response.getBitmap() == null) {
+                                    // Not cached, called again once it is loaded.
+                                    return;
+                                }
+                                builder.setStyle(new NotificationCompat.BigPictureStyle()
+                                        .bigPicture(response.getBitmap()));
+                                notifyManager.notify(PLAYBACK_NOTIFICATION_ID, builder.build());
+                                Log.d(TAG, String.format("Selectable notification for video ID [%s] posted", videoId));
+                            }
+
+                            @Override
+                            public void onErrorResponse(VolleyError error) {
+                                Log.e(TAG, "Can't load thumbnail of " + videoId, error);
+                                notifyManager.notify(PLAYBACK_NOTIFICATION_ID, builder.build());
+                            }
+                        }, maxWidth, maxHeight);
             }
-        } catch (IOException e) {
-            Log.e(TAG, "Error fetching video metadata", e);
-        }
-        return false;
+        });
     }
 }
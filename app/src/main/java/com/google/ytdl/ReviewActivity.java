@@ -16,6 +16,8 @@ import android.widget.MediaController;
 import android.widget.Toast;
 import android.widget.VideoView;
 
+import com.google.ytdl.util.ThumbnailCache;
+
 public class ReviewActivity extends Activity {
     VideoView mVideoView;
     MediaController mc;
@@ -35,6 +37,10 @@ public class ReviewActivity extends Activity {
         }
         mFileUri = intent.getData();
         loadAccount();
+        // Have the upload notification's thumbnail ready by the time the upload starts.
+        if (mFileUri != null) {
+            ThumbnailCache.getInstance(this).prefetch(mFileUri);
+        }
 
         reviewVideo(mFileUri);
     }
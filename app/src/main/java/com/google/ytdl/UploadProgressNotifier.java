@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl;
+
+import android.app.NotificationManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+
+import com.google.ytdl.util.ProgressThrottle;
+import com.google.ytdl.util.UploadMetrics;
+
+/**
+ * Posts the progress of one upload to its notification. The notification is built once, and
+ * progress callbacks only change its progress fields. Updates are coalesced to at most one per
+ * {@link Constants#PROGRESS_NOTIFICATION_INTERVAL_MS} and per
+ * {@link Constants#PROGRESS_NOTIFICATION_STEP_PERCENT}. The thumbnail may arrive from another thread
+ * while the upload is running.
+ */
+public class UploadProgressNotifier implements ChunkedUploader.Listener {
+    /**
+     * Progress is posted in per mille, file sizes above 2 GB don't fit the int progress bar.
+     */
+    private static final int PROGRESS_MAX = 1000;
+
+    private final Context mContext;
+    private final NotificationManager mNotifyManager;
+    private final NotificationCompat.Builder mBuilder;
+    private final String mTag;
+    private final int mId;
+    private final String mTitle;
+    private final String mInProgressText;
+    private final ProgressThrottle mThrottle = new ProgressThrottle(
+            Constants.PROGRESS_NOTIFICATION_INTERVAL_MS, Constants.PROGRESS_NOTIFICATION_STEP_PERCENT);
+    private boolean mFinished;
+
+    /**
+     * @param builder notification with everything but the progress already set
+     */
+    public UploadProgressNotifier(Context context, NotificationCompat.Builder builder, String tag,
+                                  int id) {
+        mContext = context;
+        mNotifyManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        mBuilder = builder.setOnlyAlertOnce(true);
+        mTag = tag;
+        mId = id;
+        mTitle = context.getString(R.string.youtube_upload);
+        mInProgressText = context.getString(R.string.upload_in_progress);
+    }
+
+    /**
+     * Posts a status line right away, keeping the current progress.
+     */
+    public synchronized void showStatus(int textId) {
+        mBuilder.setContentText(mContext.getString(textId))
+                .setProgress(PROGRESS_MAX, Math.max(0, mThrottle.getLastPercent()) * PROGRESS_MAX / 100,
+                        false);
+        post();
+    }
+
+    public synchronized void showCompleted() {
+        mBuilder.setContentTitle(mContext.getString(R.string.yt_upload_completed))
+                .setContentText(mContext.getString(R.string.upload_completed))
+                // Removes the progress bar
+                .setProgress(0, 0, false);
+        post();
+    }
+
+    /**
+     * Adds the video thumbnail, reposting the notification unless the upload has already ended.
+     */
+    public synchronized void setThumbnail(Bitmap thumbnail) {
+        mBuilder.setStyle(new NotificationCompat.BigPictureStyle().bigPicture(thumbnail));
+        if (!mFinished) {
+            post();
+        }
+    }
+
+    /**
+     * Stops posting, the upload has ended and its final notification must not be replaced.
+     */
+    public synchronized void finish() {
+        mFinished = true;
+    }
+
+    @Override
+    public void onInitiated(String sessionUrl) {
+        showStatus(R.string.initiation_completed);
+    }
+
+    @Override
+    public void onWaitingForNetwork() {
+        showStatus(R.string.upload_waiting_for_network);
+    }
+
+    @Override
+    public synchronized void onProgress(long bytesUploaded, long totalBytes) {
+        if (!mThrottle.onProgress(SystemClock.elapsedRealtime(), bytesUploaded, totalBytes)) {
+            return;
+        }
+        mBuilder.setContentTitle(mTitle + mThrottle.getLastPercent() + "%")
+                .setContentText(mInProgressText)
+                .setProgress(PROGRESS_MAX,
+                        totalBytes > 0 ? (int) (bytesUploaded * PROGRESS_MAX / totalBytes) : 0, false);
+        post();
+    }
+
+    private void post() {
+        mThrottle.onPosted(SystemClock.elapsedRealtime());
+        long timer = UploadMetrics.startTimer();
+        mNotifyManager.notify(mTag, mId, mBuilder.build());
+        UploadMetrics.getInstance().stopTimer(UploadMetrics.Stat.NOTIFICATION_US, timer);
+    }
+}
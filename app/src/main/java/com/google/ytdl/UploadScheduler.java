@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs uploads on a bounded pool of workers. Waiting uploads are started in order of priority,
+ * then smallest file first, so short clips are not stuck behind a multi-gigabyte video.
+ */
+public class UploadScheduler {
+    private final ThreadPoolExecutor mExecutor;
+    /**
+     * breaks ties between equal jobs in the order they were scheduled
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    public UploadScheduler(int poolSize) {
+        // Jobs must go through execute(), submit() would wrap them in a non-comparable future.
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>());
+    }
+
+    /**
+     * @param priority higher priorities start first
+     * @param size     file size in bytes, smaller files start first among equal priorities
+     */
+    public void schedule(Runnable upload, int priority, long size) {
+        mExecutor.execute(new Job(upload, priority, size, mSequence.getAndIncrement()));
+    }
+
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private static class Job implements Runnable, Comparable<Job> {
+        private final Runnable mUpload;
+        private final int mPriority;
+        private final long mSize;
+        private final long mSequence;
+
+        Job(Runnable upload, int priority, long size, long sequence) {
+            mUpload = upload;
+            mPriority = priority;
+            mSize = size;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            mUpload.run();
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (mPriority != other.mPriority) {
+                return mPriority > other.mPriority ? -1 : 1;
+            }
+            if (mSize != other.mSize) {
+                return mSize < other.mSize ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
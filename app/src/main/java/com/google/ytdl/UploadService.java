@@ -14,170 +14,599 @@
 
 package com.google.ytdl;
 
-import android.app.IntentService;
+import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
-import android.provider.MediaStore;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.google.api.client.extensions.android.http.AndroidHttp;
-import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.gson.GsonFactory;
-import com.google.api.client.util.ExponentialBackOff;
 import com.google.api.services.youtube.YouTube;
-import com.google.common.collect.Lists;
+import com.google.api.services.youtube.model.VideoListResponse;
+import com.google.ytdl.util.AndroidConnectivitySource;
+import com.google.ytdl.util.ApiFields;
+import com.google.ytdl.util.BandwidthLimiter;
+import com.google.ytdl.util.ContentFingerprinter;
+import com.google.ytdl.util.RetryPolicy;
+import com.google.ytdl.util.UploadConstraints;
+import com.google.ytdl.util.UploadJournal;
+import com.google.ytdl.util.UploadMetrics;
+import com.google.ytdl.util.VideoTranscoder;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Ibrahim Ulukaya <ulukaya@google.com>
  *         <p/>
- *         Intent service to handle uploads.
+ *         Service to handle uploads. Uploads run concurrently on an {@link UploadScheduler}.
  */
-public class UploadService extends IntentService {
+public class UploadService extends Service {
 
     /**
-     * defines how long we'll wait for a video to finish processing
+     * Optional int extra, uploads with a higher priority start first.
      */
-    private static final int PROCESSING_TIMEOUT_SEC = 60 * 20; // 20 minutes
-
+    public static final String EXTRA_PRIORITY = "priority";
     /**
-     * controls how often to poll for video processing status
+     * max number of attempts in a row that may fail without getting any bytes committed
      */
-    private static final int PROCESSING_POLL_INTERVAL_SEC = 60;
+    private static final int MAX_RETRY = 8;
+    private static final String TAG = "UploadService";
     /**
-     * how long to wait before re-trying the upload
+     * Resumes every upload left unfinished in the journal, see {@link #resumePending}.
      */
-    private static final int UPLOAD_REATTEMPT_DELAY_SEC = 60;
+    private static final String ACTION_RESUME = "com.google.ytdl.action.RESUME_UPLOADS";
     /**
-     * max number of retry attempts
+     * written to the app's files directory whenever the service stops
      */
-    private static final int MAX_RETRY = 3;
-    private static final String TAG = "UploadService";
+    private static final String METRICS_FILE = "upload_metrics.json";
+    /**
+     * cache subdirectory holding transcoded videos until they are uploaded
+     */
+    private static final String TRANSCODED_DIR = "transcoded";
+    /**
+     * threads reading and hashing the sampled blocks of a file
+     */
+    private static final int FINGERPRINT_THREADS = 4;
+    private UploadJournal mJournal;
+    private UploadScheduler mScheduler;
+    private BandwidthLimiter mBandwidthLimiter;
+    private UploadConstraints mConstraints;
+    private ProcessingPoller mProcessingPoller;
+    private ContentFingerprinter mFingerprinter;
+    /**
+     * null if videos are uploaded as they are
+     */
+    private VideoTranscoder mTranscoder;
+    private Handler mHandler;
     /**
-     * processing start time
+     * journal IDs of uploads that are queued or running in this process
      */
-    private static long mStartTime;
-    final HttpTransport transport = AndroidHttp.newCompatibleTransport();
-    final JsonFactory jsonFactory = new GsonFactory();
-    GoogleAccountCredential credential;
+    private final Set<Long> mScheduled = new HashSet<Long>();
     /**
-     * tracks the number of upload attempts
+     * journals and schedules start requests, their database and file access stays off the main
+     * thread
      */
-    private int mUploadAttemptCount;
+    private final ExecutorService mStartExecutor = Executors.newSingleThreadExecutor();
+    private final UploadMetrics mMetrics = UploadMetrics.getInstance();
+    private int mLastStartId;
+    /**
+     * start requests handed to {@link #mStartExecutor} that haven't been scheduled yet, guarded by
+     * {@link #mScheduled}
+     */
+    private int mPendingStarts;
 
-    public UploadService() {
-        super("YTUploadService");
+    /**
+     * Continues any uploads that were queued or in flight when the process was last killed.
+     */
+    public static void resumePending(Context context) {
+        Intent intent = new Intent(context, UploadService.class);
+        intent.setAction(ACTION_RESUME);
+        context.startService(intent);
     }
 
-    private static void zzz(int duration) throws InterruptedException {
-        Log.d(TAG, String.format("Sleeping for [%d] ms ...", duration));
+    private static void zzz(long duration) throws InterruptedException {
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Sleeping for [" + duration + "] ms");
+        }
         Thread.sleep(duration);
-        Log.d(TAG, String.format("Sleeping for [%d] ms ... done", duration));
     }
 
-    private static boolean timeoutExpired(long startTime, int timeoutSeconds) {
-        long currTime = System.currentTimeMillis();
-        long elapsed = currTime - startTime;
-        if (elapsed >= timeoutSeconds * 1000) {
-            return true;
-        } else {
-            return false;
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mJournal = UploadJournal.getInstance(this);
+        mScheduler = new UploadScheduler(Constants.MAX_CONCURRENT_UPLOADS);
+        mBandwidthLimiter = new BandwidthLimiter(Constants.UPLOAD_BANDWIDTH_BUDGET);
+        mConstraints = new UploadConstraints(new AndroidConnectivitySource(this),
+                Constants.UPLOAD_UNMETERED_ABOVE_BYTES, Constants.UPLOAD_MIN_BANDWIDTH,
+                Constants.UPLOAD_REQUIRES_CHARGING);
+        mConstraints.start();
+        mFingerprinter = new ContentFingerprinter(FINGERPRINT_THREADS);
+        if (Constants.TRANSCODE_UPLOADS && VideoTranscoder.isSupported()) {
+            mTranscoder = new VideoTranscoder(Constants.TRANSCODE_MAX_HEIGHT,
+                    Constants.TRANSCODE_VIDEO_BITRATE, Constants.TRANSCODE_FRAME_RATE,
+                    Constants.TRANSCODE_I_FRAME_INTERVAL);
         }
+        mHandler = new Handler();
+        mProcessingPoller = new ProcessingPoller(new ProcessingPoller.Callbacks() {
+            @Override
+            public YouTube getYouTube(String account) {
+                return buildYouTube(account);
+            }
+
+            @Override
+            public void onProcessed(long uploadId, String videoId) {
+                ResumableUpload.showSelectableNotification(videoId, getApplicationContext());
+                mJournal.setState(uploadId, UploadJournal.State.COMPLETE);
+            }
+
+            @Override
+            public void onRejected(long uploadId, String videoId) {
+                Log.e(TAG, "YouTube did not process video " + videoId);
+                // Failed uploads don't stand in for their content, it can be uploaded again.
+                mJournal.setState(uploadId, UploadJournal.State.FAILED);
+            }
+
+            @Override
+            public void onAbandoned(long uploadId, String videoId) {
+                mJournal.setState(uploadId, UploadJournal.State.COMPLETE);
+            }
+
+            @Override
+            public void onIdle() {
+                postStopIfIdle();
+            }
+        });
     }
 
     @Override
-    protected void onHandleIntent(Intent intent) {
-        Uri fileUri = intent.getData();
-        String chosenAccountName = intent.getStringExtra(MainActivity.ACCOUNT_KEY);
+    public int onStartCommand(final Intent intent, int flags, int startId) {
+        synchronized (mScheduled) {
+            mLastStartId = startId;
+            mPendingStarts++;
+        }
+        mStartExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handleStart(intent);
+                } finally {
+                    synchronized (mScheduled) {
+                        mPendingStarts--;
+                    }
+                    postStopIfIdle();
+                }
+            }
+        });
+        // Have an upload that was in progress when the process died delivered again.
+        return START_REDELIVER_INTENT;
+    }
 
-        credential =
-                GoogleAccountCredential.usingOAuth2(getApplicationContext(), Lists.newArrayList(Auth.SCOPES));
-        credential.setSelectedAccountName(chosenAccountName);
-        credential.setBackOff(new ExponentialBackOff());
+    /**
+     * Journals and schedules the uploads of a start request, runs on {@link #mStartExecutor}.
+     */
+    private void handleStart(Intent intent) {
+        if (intent != null && ACTION_RESUME.equals(intent.getAction())) {
+            for (UploadJournal.Entry entry : mJournal.getUnfinished()) {
+                schedule(entry);
+            }
+        } else if (intent != null && intent.getData() != null) {
+            // Journal new uploads as soon as they are accepted, so they survive the process being
+            // killed while they wait in the queue.
+            long uploadId = mJournal.add(intent.getData(),
+                    intent.getStringExtra(MainActivity.ACCOUNT_KEY),
+                    intent.getIntExtra(EXTRA_PRIORITY, 0));
+            schedule(mJournal.get(uploadId));
+        }
+    }
 
-        String appName = getResources().getString(R.string.app_name);
-        final YouTube youtube =
-                new YouTube.Builder(transport, jsonFactory, credential).setApplicationName(
-                        appName).build();
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mStartExecutor.shutdownNow();
+        mScheduler.shutdown();
+        mProcessingPoller.shutdown();
+        mConstraints.stop();
+        mFingerprinter.shutdown();
+        try {
+            mMetrics.dump(new File(getFilesDir(), METRICS_FILE));
+        } catch (IOException e) {
+            Log.e(TAG, "Can't write upload metrics", e);
+        }
+    }
+
+    /**
+     * Queues the upload unless it already is. Reads the journal and the file, so never call it on
+     * the main thread.
+     */
+    private void schedule(UploadJournal.Entry entry) {
+        synchronized (mScheduled) {
+            if (!mScheduled.add(entry.id)) {
+                return;
+            }
+        }
+        long size = entry.size;
+        if (size < 0) {
+            size = readFileSize(entry.uri);
+            mJournal.setSize(entry.id, size);
+        }
+        if (entry.fingerprint == null) {
+            // Fingerprinted in the order uploads are journalled, so an earlier copy always has its
+            // fingerprint by the time a later one looks for it.
+            recordFingerprint(entry);
+        }
+        final long uploadId = entry.id;
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    handleUpload(uploadId);
+                } catch (InterruptedException e) {
+                    // ignore
+                } finally {
+                    synchronized (mScheduled) {
+                        mScheduled.remove(uploadId);
+                    }
+                    postStopIfIdle();
+                }
+            }
+        }, entry.priority, size);
+    }
 
+    private void postStopIfIdle() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                stopIfIdle();
+            }
+        });
+    }
+
+    private void stopIfIdle() {
+        synchronized (mScheduled) {
+            if (mScheduled.isEmpty() && mPendingStarts == 0 && mProcessingPoller.isIdle()) {
+                // Does nothing if a newer start request has arrived in the meantime.
+                stopSelf(mLastStartId);
+            }
+        }
+    }
+
+    /**
+     * @return the file size in bytes, or -1 if the file can't be opened
+     */
+    private long readFileSize(Uri fileUri) {
+        ParcelFileDescriptor fileDescriptor = null;
         try {
-            tryUploadAndShowSelectableNotification(fileUri, youtube);
-        } catch (InterruptedException e) {
-            // ignore
+            fileDescriptor = getContentResolver().openFileDescriptor(fileUri, "r");
+            return fileDescriptor == null ? -1 : fileDescriptor.getStatSize();
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, e.getMessage());
+            return -1;
+        } finally {
+            if (fileDescriptor != null) {
+                try {
+                    fileDescriptor.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void handleUpload(long uploadId) throws InterruptedException {
+        // Read the entry again, an earlier request may have finished it in the meantime.
+        UploadJournal.Entry entry = mJournal.get(uploadId);
+        if (entry == null) {
+            return;
+        }
+
+        switch (entry.state) {
+            case QUEUED:
+            case UPLOADING:
+                tryUploadAndShowSelectableNotification(entry, buildYouTube(entry.account));
+                break;
+            case PROCESSING:
+                mProcessingPoller.track(entry.id, entry.account, entry.videoId,
+                        entry.processingSince);
+                break;
+            default:
+                break;
         }
     }
 
-    private void tryUploadAndShowSelectableNotification(final Uri fileUri, final YouTube youtube) throws InterruptedException {
+    private YouTube buildYouTube(String accountName) {
+        return YouTubeClients.getInstance(this).get(accountName);
+    }
+
+    private void tryUploadAndShowSelectableNotification(UploadJournal.Entry entry, final YouTube youtube) throws InterruptedException {
+        if (skipIfDuplicate(entry, youtube)) {
+            return;
+        }
+        RetryPolicy retryPolicy = new RetryPolicy(MAX_RETRY);
+        mMetrics.increment(UploadMetrics.Counter.UPLOADS_STARTED);
+        File transcoded = prepareUpload(entry);
+        if (transcoded != null) {
+            entry = mJournal.get(entry.id);
+        }
         while (true) {
-            Log.i(TAG, String.format("Uploading [%s] to YouTube", fileUri.toString()));
-            String videoId = tryUpload(fileUri, youtube);
-            if (videoId != null) {
-                Log.i(TAG, String.format("Uploaded video with ID: %s", videoId));
-                tryShowSelectableNotification(videoId, youtube);
+            awaitConstraints(entry);
+            Log.i(TAG, "Uploading [" + entry.uri + "] to YouTube");
+            long startTime = SystemClock.elapsedRealtime();
+            long startOffset = entry.committedOffset;
+            try {
+                String videoId = tryUpload(entry, transcoded, youtube);
+                retryPolicy.onSuccess(SystemClock.elapsedRealtime() - startTime,
+                        entry.size - startOffset);
+                Log.i(TAG, "Uploaded video with ID: " + videoId);
+                mMetrics.increment(UploadMetrics.Counter.UPLOADS_SUCCEEDED);
+                long processingSince = System.currentTimeMillis();
+                mJournal.setVideoId(entry.id, videoId, processingSince);
+                deleteTranscoded(transcoded);
+                // Processing is polled separately, this worker is free for the next upload.
+                mProcessingPoller.track(entry.id, entry.account, videoId, processingSince);
                 return;
-            } else {
-                Log.e(TAG, String.format("Failed to upload %s", fileUri.toString()));
-                if (mUploadAttemptCount++ < MAX_RETRY) {
-                    Log.i(TAG, String.format("Will retry to upload the video ([%d] out of [%d] reattempts)",
-                            mUploadAttemptCount, MAX_RETRY));
-                    zzz(UPLOAD_REATTEMPT_DELAY_SEC * 1000);
-                } else {
-                    Log.e(TAG, String.format("Giving up on trying to upload %s after %d attempts",
-                            fileUri.toString(), mUploadAttemptCount));
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // The service is shutting down, the journal keeps the upload for later.
+                    throw new InterruptedException();
+                }
+                if (!mConstraints.isSatisfied(entry.size)) {
+                    // Lost the network rather than failed, wait for it without using up a retry.
+                    entry = mJournal.get(entry.id);
+                    continue;
+                }
+                Log.e(TAG, "Failed to upload " + entry.uri, e);
+                mJournal.incrementAttempts(entry.id);
+                // Pick up the session URL and offset recorded by the failed attempt.
+                UploadJournal.Entry failed = mJournal.get(entry.id);
+                long bytesCommitted = entry.sessionUrl != null && entry.sessionUrl.equals(failed.sessionUrl)
+                        ? failed.committedOffset - startOffset : failed.committedOffset;
+                long delayMs = retryPolicy.onFailure(e, SystemClock.elapsedRealtime() - startTime,
+                        bytesCommitted);
+                RetryPolicy.ErrorClass errorClass = RetryPolicy.classify(e);
+                Log.i(TAG, "Upload of " + entry.uri + " "
+                        + retryPolicy.getAttempts().get(retryPolicy.getAttempts().size() - 1));
+
+                if (delayMs < 0) {
+                    Log.e(TAG, "Giving up on trying to upload " + entry.uri + " after "
+                            + retryPolicy.getAttempts().size() + " attempts");
+                    mMetrics.increment(UploadMetrics.Counter.UPLOADS_FAILED);
+                    if (errorClass != RetryPolicy.ErrorClass.QUOTA_EXCEEDED) {
+                        mJournal.setState(entry.id, UploadJournal.State.FAILED);
+                        deleteTranscoded(transcoded);
+                    }
+                    // Out of quota uploads stay queued and resume on a later start.
+                    ResumableUpload.showFailedNotification(entry.uri, e, getApplicationContext());
                     return;
                 }
+                mMetrics.increment(UploadMetrics.Counter.RETRIES);
+                if (errorClass == RetryPolicy.ErrorClass.SESSION_EXPIRED) {
+                    mJournal.clearSession(entry.id);
+                }
+                zzz(delayMs);
+                entry = mJournal.get(entry.id);
             }
         }
     }
 
-    private void tryShowSelectableNotification(final String videoId, final YouTube youtube)
-            throws InterruptedException {
-        mStartTime = System.currentTimeMillis();
-        boolean processed = false;
-        while (!processed) {
-            processed = ResumableUpload.checkIfProcessed(videoId, youtube);
-            if (!processed) {
-                // wait a while
-                Log.d(TAG, String.format("Video [%s] is not processed yet, will retry after [%d] seconds",
-                        videoId, PROCESSING_POLL_INTERVAL_SEC));
-                if (!timeoutExpired(mStartTime, PROCESSING_TIMEOUT_SEC)) {
-                    zzz(PROCESSING_POLL_INTERVAL_SEC * 1000);
-                } else {
-                    Log.d(TAG, String.format("Bailing out polling for processing status after [%d] seconds",
-                            PROCESSING_TIMEOUT_SEC));
-                    return;
-                }
-            } else {
-                ResumableUpload.showSelectableNotification(videoId, getApplicationContext());
-                return;
+    private void recordFingerprint(UploadJournal.Entry entry) {
+        long timer = UploadMetrics.startTimer();
+        try {
+            mJournal.setFingerprint(entry.id, fingerprint(entry.uri));
+        } catch (IOException e) {
+            // The upload itself will report a file that can't be read.
+            Log.e(TAG, "Failed to fingerprint " + entry.uri, e);
+            return;
+        }
+        mMetrics.stopTimer(UploadMetrics.Stat.FINGERPRINT_MS, timer);
+    }
+
+    /**
+     * Drops the upload if the same content was uploaded to the same account before, or is being
+     * uploaded by an earlier request, e.g. after tapping upload twice or picking a video again.
+     *
+     * @return true if the upload was dropped
+     */
+    private boolean skipIfDuplicate(UploadJournal.Entry entry, YouTube youtube) {
+        UploadJournal.Entry original = mJournal.findEarlier(entry);
+        try {
+            while (original != null && original.videoId != null
+                    && !videoExists(youtube, original.videoId)) {
+                // Deleted since, it no longer stands in for this content.
+                mJournal.setFingerprint(original.id, null);
+                original = mJournal.findEarlier(entry);
+            }
+        } catch (IOException e) {
+            // Rather upload a copy than drop the only one.
+            Log.e(TAG, "Can't check whether video " + original.videoId + " still exists", e);
+            return false;
+        }
+        if (original == null) {
+            return false;
+        }
+
+        Log.i(TAG, "Not uploading " + entry.uri + ", it repeats upload " + original.id + " of "
+                + original.uri);
+        mMetrics.increment(UploadMetrics.Counter.UPLOADS_DEDUPLICATED);
+        mJournal.setDuplicate(entry.id, original.videoId);
+        switch (original.state) {
+            case QUEUED:
+            case UPLOADING:
+                ResumableUpload.showDuplicateNotification(entry.uri, original.uri,
+                        getApplicationContext());
+                // Resume the earlier upload in case it isn't running, e.g. after running out of
+                // quota. Scheduling it again is a no-op otherwise.
+                schedule(original);
+                break;
+            case COMPLETE:
+                ResumableUpload.showSelectableNotification(original.videoId, getApplicationContext());
+                break;
+            default:
+                // Still processing, the earlier upload notifies when it is done.
+                break;
+        }
+        return true;
+    }
+
+    private static boolean videoExists(YouTube youtube, String videoId) throws IOException {
+        VideoListResponse response = youtube.videos().list("id").setId(videoId)
+                .setFields(ApiFields.VIDEO_IDS).execute();
+        return response.getItems() != null && !response.getItems().isEmpty();
+    }
+
+    private String fingerprint(Uri uri) throws IOException {
+        ParcelFileDescriptor fileDescriptor = getContentResolver().openFileDescriptor(uri, "r");
+        if (fileDescriptor == null) {
+            throw new FileNotFoundException("Can't open " + uri);
+        }
+        FileInputStream fileInputStream = new ParcelFileDescriptor.AutoCloseInputStream(fileDescriptor);
+        try {
+            return mFingerprinter.fingerprint(fileInputStream.getChannel());
+        } finally {
+            try {
+                fileInputStream.close();
+            } catch (IOException e) {
+                // ignore
             }
         }
     }
 
-    private String tryUpload(Uri mFileUri, YouTube youtube) {
-        long fileSize;
-        InputStream fileInputStream = null;
-        String videoId = null;
+    /**
+     * Transcodes the video to the smaller upload profile, unless that is turned off or was done by
+     * an earlier attempt.
+     *
+     * @return the file to upload instead of the original, or null to upload the original
+     */
+    private File prepareUpload(UploadJournal.Entry entry) {
+        if (mTranscoder == null) {
+            return null;
+        }
+        File output = new File(new File(getCacheDir(), TRANSCODED_DIR), entry.id + ".mp4");
+        if (output.exists()) {
+            return output;
+        }
+        if (!output.getParentFile().isDirectory() && !output.getParentFile().mkdirs()) {
+            Log.e(TAG, "Can't create " + output.getParent());
+            return null;
+        }
+        long timer = UploadMetrics.startTimer();
         try {
-            fileSize = getContentResolver().openFileDescriptor(mFileUri, "r").getStatSize();
-            fileInputStream = getContentResolver().openInputStream(mFileUri);
-            String[] proj = {MediaStore.Images.Media.DATA};
-            Cursor cursor = getContentResolver().query(mFileUri, proj, null, null, null);
-            int column_index = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
-            cursor.moveToFirst();
+            if (!mTranscoder.transcode(this, entry.uri, output)) {
+                return null;
+            }
+        } catch (IOException e) {
+            // The original can always be uploaded instead.
+            Log.e(TAG, "Failed to transcode " + entry.uri, e);
+            return null;
+        }
+        long transcodeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timer);
+        mMetrics.record(UploadMetrics.Stat.TRANSCODE_MS, transcodeMs);
+        mMetrics.increment(UploadMetrics.Counter.TRANSCODES);
+        // A session started for the original can't take the transcoded bytes.
+        mJournal.clearSession(entry.id);
+        mJournal.setSize(entry.id, output.length());
+        recordTranscodeSavings(entry.size, output.length(), transcodeMs);
+        return output;
+    }
 
-            videoId = ResumableUpload.upload(youtube, fileInputStream, fileSize, mFileUri, cursor.getString(column_index), getApplicationContext());
+    private void recordTranscodeSavings(long originalSize, long transcodedSize, long transcodeMs) {
+        if (originalSize <= 0) {
+            return;
+        }
+        mMetrics.record(UploadMetrics.Stat.TRANSCODE_RATIO_PERCENT,
+                transcodedSize * 100 / originalSize);
+        mMetrics.add(UploadMetrics.Counter.TRANSCODE_BYTES_SAVED, originalSize - transcodedSize);
+        // Estimated from the typical throughput of the chunks uploaded so far.
+        long bytesPerSecond = mMetrics.getHistogram(UploadMetrics.Stat.CHUNK_BYTES_PER_SECOND)
+                .percentile(50);
+        if (bytesPerSecond > 0) {
+            long savedMs = (originalSize - transcodedSize) * 1000 / bytesPerSecond - transcodeMs;
+            mMetrics.record(UploadMetrics.Stat.TRANSCODE_SAVED_MS, savedMs);
+            Log.i(TAG, "Transcoding to " + transcodedSize + " of " + originalSize
+                    + " bytes took " + transcodeMs + " ms and saves about " + savedMs + " ms");
+        }
+    }
 
+    private static void deleteTranscoded(File transcoded) {
+        if (transcoded != null && !transcoded.delete()) {
+            Log.w(TAG, "Can't delete " + transcoded);
+        }
+    }
 
-        } catch (FileNotFoundException e) {
-            Log.e(getApplicationContext().toString(), e.getMessage());
+    /**
+     * Holds the upload until the network and power state allow it, before anything is sent.
+     */
+    private void awaitConstraints(UploadJournal.Entry entry) throws InterruptedException {
+        if (mConstraints.isSatisfied(entry.size)) {
+            return;
+        }
+        Log.i(TAG, "Upload of " + entry.uri + " waits until the network allows it");
+        try {
+            mConstraints.await(entry.size);
+        } catch (InterruptedIOException e) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * @param transcoded file to upload in place of the original, or null
+     */
+    private String tryUpload(final UploadJournal.Entry entry, File transcoded, YouTube youtube)
+            throws IOException {
+        long openTimer = UploadMetrics.startTimer();
+        ParcelFileDescriptor fileDescriptor = transcoded != null
+                ? ParcelFileDescriptor.open(transcoded, ParcelFileDescriptor.MODE_READ_ONLY)
+                : getContentResolver().openFileDescriptor(entry.uri, "r");
+        if (fileDescriptor == null) {
+            throw new FileNotFoundException("Can't open " + entry.uri);
+        }
+        // Closing the stream closes the descriptor as well, once and whatever happens below.
+        FileInputStream fileInputStream = new ParcelFileDescriptor.AutoCloseInputStream(fileDescriptor);
+        try {
+            long fileSize = fileDescriptor.getStatSize();
+            mMetrics.stopTimer(UploadMetrics.Stat.FILE_OPEN_MS, openTimer);
+
+            // A session only stays valid for the exact bytes it was started with.
+            String sessionUrl = entry.size == fileSize ? entry.sessionUrl : null;
+            mJournal.setSize(entry.id, fileSize);
+            ChunkedUploader uploader = new ChunkedUploader(youtube);
+            uploader.setBandwidthLimiter(mBandwidthLimiter);
+            uploader.setConstraints(mConstraints);
+            uploader.addListener(new ChunkedUploader.Listener() {
+                @Override
+                public void onInitiated(String url) {
+                    mJournal.setSessionUrl(entry.id, url);
+                }
+
+                @Override
+                public void onProgress(long bytesUploaded, long totalBytes) {
+                    mJournal.setCommittedOffset(entry.id, bytesUploaded);
+                }
+
+                @Override
+                public void onWaitingForNetwork() {
+                }
+            });
+
+            return ResumableUpload.upload(uploader, fileInputStream.getChannel(), fileSize, sessionUrl,
+                    entry.uri, getApplicationContext());
         } finally {
             try {
                 fileInputStream.close();
@@ -185,7 +614,6 @@ public class UploadService extends IntentService {
                 // ignore
             }
         }
-        return videoId;
     }
 
 }
@@ -24,13 +24,14 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.BaseAdapter;
 import android.widget.GridView;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.android.volley.toolbox.ImageLoader;
+import com.android.volley.Request;
 import com.android.volley.toolbox.NetworkImageView;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -39,9 +40,20 @@ import com.google.android.gms.common.api.GoogleApiClient.OnConnectionFailedListe
 import com.google.android.gms.plus.Plus;
 import com.google.android.gms.plus.PlusOneButton;
 import com.google.android.gms.plus.model.people.Person;
+import com.google.ytdl.util.NetworkSingleton;
+import com.google.ytdl.util.PooledImageLoader;
+import com.google.ytdl.util.ThumbnailPrefetcher;
 import com.google.ytdl.util.VideoData;
+import com.google.ytdl.util.VideoIndex;
+import com.google.ytdl.util.VideoListDiff;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * @author Ibrahim Ulukaya <ulukaya@google.com>
@@ -52,11 +64,31 @@ public class UploadsListFragment extends Fragment implements ConnectionCallbacks
         OnConnectionFailedListener {
 
     private static final String TAG = UploadsListFragment.class.getName();
+    /**
+     * how many items from the end of the grid the next page starts loading
+     */
+    private static final int LOAD_MORE_THRESHOLD = 12;
     private static Context mContext;
     private Callbacks mCallbacks;
     private GoogleApiClient mGoogleApiClient;
     private GridView mGridView;
-    private ImageLoader mImageLoader;
+    /**
+     * this screen's own loader, its requests are cancelled when the fragment is detached
+     */
+    private PooledImageLoader mImageLoader;
+    private final VideoIndex mIndex = new VideoIndex(Locale.getDefault());
+    /**
+     * only public videos are shown unless another query is set
+     */
+    private VideoIndex.Query mQuery = new VideoIndex.Query()
+            .setPrivacyStatus(VideoData.PRIVACY_PUBLIC);
+    private final List<VideoData> mVideos = new ArrayList<VideoData>();
+    private UploadedVideoAdapter mAdapter;
+    private ThumbnailPrefetcher mPrefetcher;
+    /**
+     * bumped on every Google API connection, +1 buttons are initialized again after it changes
+     */
+    private int mPlusGeneration;
 
     public UploadsListFragment() {
     }
@@ -87,21 +119,91 @@ public class UploadsListFragment extends Fragment implements ConnectionCallbacks
         mGridView = (GridView) listView.findViewById(R.id.grid_view);
         TextView emptyView = (TextView) listView.findViewById(android.R.id.empty);
         mGridView.setEmptyView(emptyView);
+        mAdapter = new UploadedVideoAdapter(mVideos);
+        mGridView.setAdapter(mAdapter);
+        mPrefetcher = new ThumbnailPrefetcher(getActivity(), mImageLoader, mVideos);
+        mGridView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                                 int totalItemCount) {
+                if (view.getChildCount() > 0) {
+                    NetworkImageView thumbnail = ((ViewHolder) view.getChildAt(0).getTag()).thumbnail;
+                    mPrefetcher.setThumbnailSize(thumbnail.getWidth(), thumbnail.getHeight(),
+                            thumbnail.getScaleType());
+                    mPrefetcher.onScroll(firstVisibleItem, visibleItemCount,
+                            mGridView.getNumColumns());
+                }
+                if (mCallbacks != null && totalItemCount > 0
+                        && firstVisibleItem + visibleItemCount >= totalItemCount - LOAD_MORE_THRESHOLD) {
+                    mCallbacks.onLoadMore();
+                }
+            }
+        });
         return listView;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mPrefetcher.cancelAll();
+    }
+
     @Override
     public void onViewCreated(View view, Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
         setProfileInfo();
     }
 
-    public void setVideos(List<VideoData> videos) {
-        if (!isAdded()) {
-            return;
+    /**
+     * @return the videos shown in the grid
+     */
+    public List<VideoData> getVideos() {
+        return new ArrayList<VideoData>(mVideos);
+    }
+
+    public void clearVideos() {
+        mIndex.clear();
+        showQueryResult();
+    }
+
+    /**
+     * Adds videos to the grid at their place in title order. Videos already shown are replaced.
+     */
+    public void addVideos(List<VideoData> videos) {
+        updateVideos(videos, Collections.<String>emptyList());
+    }
+
+    /**
+     * Applies a page of changes, the grid is redrawn once for both.
+     */
+    public void updateVideos(Collection<VideoData> changed, Collection<String> removedIds) {
+        if (mIndex.update(changed, removedIds)) {
+            showQueryResult();
         }
+    }
 
-        mGridView.setAdapter(new UploadedVideoAdapter(videos));
+    /**
+     * Shows only the loaded videos matching the query, e.g. to filter by tag or date.
+     */
+    public void setQuery(VideoIndex.Query query) {
+        mQuery = query;
+        showQueryResult();
+    }
+
+    private void showQueryResult() {
+        List<VideoData> videos = mIndex.query(mQuery);
+        if (!VideoListDiff.calculate(mVideos, videos).hasChanges()) {
+            return;
+        }
+        mVideos.clear();
+        mVideos.addAll(videos);
+        if (isAdded() && mAdapter != null) {
+            mAdapter.notifyDataSetChanged();
+        }
     }
 
     public void setProfileInfo() {
@@ -135,12 +237,16 @@ public class UploadsListFragment extends Fragment implements ConnectionCallbacks
     public void onPause() {
         super.onPause();
         mGoogleApiClient.disconnect();
+        if (mPrefetcher != null) {
+            mPrefetcher.cancelAll();
+        }
     }
 
     @Override
     public void onConnected(Bundle bundle) {
-        if (mGridView.getAdapter() != null) {
-            ((UploadedVideoAdapter) mGridView.getAdapter()).notifyDataSetChanged();
+        mPlusGeneration++;
+        if (mAdapter != null) {
+            mAdapter.notifyDataSetChanged();
         }
 
         setProfileInfo();
@@ -180,26 +286,81 @@ public class UploadsListFragment extends Fragment implements ConnectionCallbacks
         }
 
         mCallbacks = (Callbacks) activity;
-        mImageLoader = mCallbacks.onGetImageLoader();
+        mImageLoader = NetworkSingleton.getInstance(activity)
+                .newImageLoader(this, Request.Priority.NORMAL);
     }
 
     @Override
     public void onDetach() {
         super.onDetach();
+        NetworkSingleton networkSingleton = NetworkSingleton.getInstance(getActivity());
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Image cache: " + networkSingleton.getStats());
+        }
+        networkSingleton.cancelAll(this);
         mCallbacks = null;
         mImageLoader = null;
     }
 
     public interface Callbacks {
-        public ImageLoader onGetImageLoader();
+        /**
+         * Called when the grid is scrolled close to its last item.
+         */
+        public void onLoadMore();
 
         public void onVideoSelected(VideoData video);
 
         public void onConnected(String connectedAccountName);
     }
 
+    /**
+     * Views of a grid item, looked up once when it is inflated.
+     */
+    private class ViewHolder implements View.OnClickListener {
+        final TextView title;
+        final NetworkImageView thumbnail;
+        final PlusOneButton plusButton;
+        /**
+         * the video bound last, null if none
+         */
+        VideoData video;
+        int plusGeneration = -1;
+
+        ViewHolder(View view) {
+            title = (TextView) view.findViewById(android.R.id.text1);
+            thumbnail = (NetworkImageView) view.findViewById(R.id.thumbnail);
+            plusButton = (PlusOneButton) view.findViewById(R.id.plus_button);
+            view.findViewById(R.id.main_target).setOnClickListener(this);
+        }
+
+        void bind(VideoData newVideo) {
+            boolean sameVideo = VideoListDiff.isSameContent(video, newVideo);
+            video = newVideo;
+            if (!sameVideo) {
+                title.setText(newVideo.getTitle());
+                thumbnail.setImageUrl(newVideo.getThumbUri(), mImageLoader);
+            }
+            if (mGoogleApiClient.isConnected()
+                    && (!sameVideo || plusGeneration != mPlusGeneration)) {
+                plusButton.initialize(newVideo.getWatchUri(), null);
+                plusGeneration = mPlusGeneration;
+            }
+        }
+
+        @Override
+        public void onClick(View view) {
+            if (mCallbacks != null && video != null) {
+                mCallbacks.onVideoSelected(video);
+            }
+        }
+    }
+
     private class UploadedVideoAdapter extends BaseAdapter {
         private List<VideoData> mVideos;
+        /**
+         * item IDs handed out by video ID, so an item keeps its ID as the list changes
+         */
+        private final Map<String, Long> mItemIds = new HashMap<String, Long>();
 
         private UploadedVideoAdapter(List<VideoData> videos) {
             mVideos = videos;
@@ -217,32 +378,33 @@ public class UploadsListFragment extends Fragment implements ConnectionCallbacks
 
         @Override
         public long getItemId(int i) {
-            return mVideos.get(i).getYouTubeId().hashCode();
+            String youtubeId = mVideos.get(i).getYouTubeId();
+            Long id = mItemIds.get(youtubeId);
+            if (id == null) {
+                id = (long) mItemIds.size();
+                mItemIds.put(youtubeId, id);
+            }
+            return id;
         }
 
         @Override
-        public View getView(final int position, View convertView,
-                            ViewGroup container) {
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup container) {
+            ViewHolder holder;
             if (convertView == null) {
                 convertView = LayoutInflater.from(getActivity()).inflate(
                         R.layout.list_item, container, false);
+                holder = new ViewHolder(convertView);
+                convertView.setTag(holder);
+            } else {
+                holder = (ViewHolder) convertView.getTag();
             }
-
-            VideoData video = mVideos.get(position);
-            ((TextView) convertView.findViewById(android.R.id.text1))
-                    .setText(video.getTitle());
-            ((NetworkImageView) convertView.findViewById(R.id.thumbnail)).setImageUrl(video.getThumbUri(), mImageLoader);
-            if (mGoogleApiClient.isConnected()) {
-                ((PlusOneButton) convertView.findViewById(R.id.plus_button))
-                        .initialize(video.getWatchUri(), null);
-            }
-            convertView.findViewById(R.id.main_target).setOnClickListener(
-                    new View.OnClickListener() {
-                        @Override
-                        public void onClick(View view) {
-                            mCallbacks.onVideoSelected(mVideos.get(position));
-                        }
-                    });
+            // Views still showing the same version of the video are left as they are.
+            holder.bind(mVideos.get(position));
             return convertView;
         }
     }
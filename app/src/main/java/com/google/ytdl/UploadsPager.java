@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.PlaylistItem;
+import com.google.api.services.youtube.model.PlaylistItemListResponse;
+import com.google.ytdl.util.ApiFields;
+import com.google.ytdl.util.UploadsPlaylistResolver;
+import com.google.ytdl.util.VideoData;
+import com.google.ytdl.util.VideoListParser;
+import com.google.ytdl.util.VideoStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the user's uploads playlist a page at a time. While the videos of one page are fetched,
+ * the following playlist page is already on its way, so the next {@link #loadNextPage()} only
+ * waits for its video details.
+ * <p/>
+ * Pages are revalidated against the {@link VideoStore} with conditional requests, and only videos
+ * whose ETag changed are reported.
+ */
+public class UploadsPager {
+    /**
+     * most items a playlistItems.list or videos.list request returns
+     */
+    private static final long PAGE_SIZE = 50;
+    private static final int STATUS_CODE_NOT_MODIFIED = 304;
+
+    private final YouTube mYouTube;
+    private final VideoListParser mParser;
+    private final VideoStore mStore;
+    private final UploadsPlaylistResolver mPlaylistResolver;
+    private final String mAccount;
+    private final Callbacks mCallbacks;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+    /**
+     * videos seen during this pass over the playlist, to find the ones deleted since the last
+     */
+    private final Set<String> mSeenIds = new HashSet<String>();
+    /**
+     * token the next loaded page must have for {@link #mSeenIds} to cover the whole playlist, and
+     * whether every page so far had the expected one. Only touched by the loading task.
+     */
+    private String mExpectedPageToken;
+    private boolean mSeenAllPages = true;
+    /**
+     * playlist page being prefetched and its token, only touched by the loading task
+     */
+    private Future<VideoStore.Page> mNextPage;
+    private String mNextPageToken;
+    /**
+     * token of the page the next {@link #loadNextPage()} loads, null for the first page. Only moves
+     * on once a page has fully loaded, so a failed page is loaded again.
+     */
+    private String mPageToken;
+    private boolean mLoading;
+    private boolean mHasMore = true;
+    private volatile boolean mCancelled;
+
+    public UploadsPager(YouTube youtube, VideoStore store, UploadsPlaylistResolver playlistResolver,
+                        String account, Callbacks callbacks) {
+        mYouTube = youtube;
+        mParser = new VideoListParser(youtube.getJsonFactory());
+        mStore = store;
+        mPlaylistResolver = playlistResolver;
+        mAccount = account;
+        mCallbacks = callbacks;
+    }
+
+    private static boolean isNotModified(HttpResponseException e) {
+        return e.getStatusCode() == STATUS_CODE_NOT_MODIFIED;
+    }
+
+    /**
+     * Starts loading the next page unless one is loading already or the last page was reached.
+     * Must be called on the main thread.
+     */
+    public void loadNextPage() {
+        if (!canLoadMore()) {
+            return;
+        }
+        mLoading = true;
+        final String pageToken = mPageToken;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    VideoStore.Page page = takePage(pageToken);
+                    final String nextPageToken = page.nextPageToken;
+                    // Keep revalidating on our own while the pages are known, they're on screen.
+                    final boolean revalidateNext = nextPageToken != null
+                            && mStore.getPage(mAccount, nextPageToken) != null;
+                    if (nextPageToken != null) {
+                        mNextPage = mExecutor.submit(new PageFetch(nextPageToken));
+                        mNextPageToken = nextPageToken;
+                    }
+                    final List<VideoData> changed = new ArrayList<VideoData>();
+                    final List<String> removed = new ArrayList<String>();
+                    fetchVideos(page, changed, removed);
+                    recordSeen(page);
+                    if (nextPageToken == null && mSeenAllPages) {
+                        removed.addAll(mStore.retain(mAccount, mSeenIds));
+                    }
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mLoading = false;
+                            mPageToken = nextPageToken;
+                            mHasMore = nextPageToken != null;
+                            mCallbacks.onPageLoaded(changed, removed, mHasMore);
+                            if (revalidateNext) {
+                                loadNextPage();
+                            }
+                        }
+                    });
+                } catch (final IOException e) {
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mLoading = false;
+                            mCallbacks.onPageFailed(e);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if no page is loading and there are pages left to load
+     */
+    public boolean canLoadMore() {
+        return !mLoading && mHasMore && !mCancelled;
+    }
+
+    /**
+     * Drops pages still in flight, e.g. when the account changes or the list is refreshed.
+     */
+    public void cancel() {
+        mCancelled = true;
+        mExecutor.shutdownNow();
+    }
+
+    private void post(final Runnable r) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    r.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds the videos of a fully loaded page to the ones seen in this pass. Stored videos are only
+     * dropped for missing from the playlist if no page of the pass was left out, otherwise the
+     * videos of that page would be taken as deleted.
+     */
+    private void recordSeen(VideoStore.Page page) {
+        if (!TextUtils.equals(page.pageToken, mExpectedPageToken)) {
+            mSeenAllPages = false;
+        }
+        mExpectedPageToken = page.nextPageToken;
+        mSeenIds.addAll(page.videoIds);
+    }
+
+    /**
+     * @return the playlist page with the given token, prefetched if it was the page expected next
+     */
+    private VideoStore.Page takePage(String pageToken) throws IOException {
+        Future<VideoStore.Page> prefetched = mNextPage;
+        String prefetchedToken = mNextPageToken;
+        mNextPage = null;
+        mNextPageToken = null;
+        if (prefetched == null || !TextUtils.equals(prefetchedToken, pageToken)) {
+            // Nothing prefetched, or the page before failed and is loaded again.
+            if (prefetched != null) {
+                prefetched.cancel(false);
+            }
+            return new PageFetch(pageToken).call();
+        }
+        try {
+            return prefetched.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading uploads");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Fetches the videos of a page unless they are unchanged since it was stored, and records which
+     * videos changed or are no longer shown.
+     */
+    private void fetchVideos(VideoStore.Page page, List<VideoData> changed, List<String> removed)
+            throws IOException {
+        if (page.videoIds.isEmpty()) {
+            mStore.putPage(mAccount, page);
+            return;
+        }
+        VideoStore.Page stored = mStore.getPage(mAccount, page.pageToken);
+        YouTube.Videos.List request = mYouTube.videos()
+                .list("id,snippet,status")
+                .setId(TextUtils.join(",", page.videoIds))
+                .setFields(ApiFields.GRID_VIDEOS);
+        if (stored != null && stored.videosEtag != null && stored.videoIds.equals(page.videoIds)) {
+            request.setRequestHeaders(new HttpHeaders().setIfNoneMatch(stored.videosEtag));
+        }
+        VideoListParser.Result result;
+        try {
+            // Parsed as a stream, the generated Video model would hold far more than the grid needs.
+            HttpResponse response = request.executeUnparsed();
+            try {
+                result = mParser.parse(response.getContent());
+            } finally {
+                response.disconnect();
+            }
+        } catch (HttpResponseException e) {
+            if (!isNotModified(e)) {
+                throw e;
+            }
+            mStore.putPage(mAccount, page);
+            return;
+        }
+
+        // Videos of every privacy status are kept, the grid decides which ones it shows.
+        Map<String, String> etags = mStore.getEtags(page.videoIds);
+        for (VideoData video : result.videos) {
+            if (video.getEtag() == null
+                    || !video.getEtag().equals(etags.get(video.getYouTubeId()))) {
+                changed.add(video);
+            }
+        }
+        mStore.update(mAccount, changed, removed);
+        mStore.putPage(mAccount, new VideoStore.Page(page.pageToken, page.etag,
+                page.nextPageToken, page.videoIds, result.etag));
+    }
+
+    public interface Callbacks {
+        /**
+         * @param changed videos that are new or changed since they were stored
+         * @param removedIds videos that were deleted
+         * @param hasMore whether there are further pages to load
+         */
+        public void onPageLoaded(List<VideoData> changed, List<String> removedIds,
+                                 boolean hasMore);
+
+        public void onPageFailed(IOException e);
+    }
+
+    /**
+     * Fetches a playlist page, or takes it from the store if it is unchanged.
+     */
+    private class PageFetch implements Callable<VideoStore.Page> {
+        private final String mPageToken;
+
+        PageFetch(String pageToken) {
+            mPageToken = pageToken;
+        }
+
+        @Override
+        public VideoStore.Page call() throws IOException {
+            VideoStore.Page stored = mStore.getPage(mAccount, mPageToken);
+            YouTube.PlaylistItems.List request = mYouTube.playlistItems()
+                    .list("contentDetails")
+                    .setPlaylistId(mPlaylistResolver.resolve(mYouTube, mAccount))
+                    .setFields(ApiFields.PLAYLIST_PAGE)
+                    .setPageToken(mPageToken)
+                    .setMaxResults(PAGE_SIZE);
+            if (stored != null && stored.etag != null) {
+                request.setRequestHeaders(new HttpHeaders().setIfNoneMatch(stored.etag));
+            }
+            PlaylistItemListResponse pilr;
+            try {
+                pilr = request.execute();
+            } catch (HttpResponseException e) {
+                if (e.getStatusCode() == HttpStatusCodes.STATUS_CODE_NOT_FOUND) {
+                    // The channel's uploads playlist changed, look it up again next time.
+                    mPlaylistResolver.invalidate(mAccount);
+                }
+                if (!isNotModified(e)) {
+                    throw e;
+                }
+                return stored;
+            }
+
+            List<String> videoIds = new ArrayList<String>();
+            if (pilr.getItems() != null) {
+                for (PlaylistItem item : pilr.getItems()) {
+                    videoIds.add(item.getContentDetails().getVideoId());
+                }
+            }
+            return new VideoStore.Page(mPageToken, pilr.getEtag(), pilr.getNextPageToken(),
+                    videoIds, stored == null ? null : stored.videosEtag);
+        }
+    }
+}
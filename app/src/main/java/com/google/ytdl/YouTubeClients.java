@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl;
+
+import android.content.Context;
+
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.services.youtube.YouTube;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide YouTube clients, one per account. All of them share one HTTP transport and one
+ * JSON factory, so pooled connections, TLS sessions and parsed type information outlive the
+ * activity or request that first needed them.
+ */
+public class YouTubeClients {
+    /**
+     * idle connections HttpURLConnection keeps per host
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final int CONNECT_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(20);
+    private static final int READ_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(60);
+    private static YouTubeClients mInstance;
+
+    private final Context mContext;
+    private final HttpTransport mTransport;
+    private final JsonFactory mJsonFactory = new GsonFactory();
+    private final Map<String, YouTube> mClients = new HashMap<String, YouTube>();
+
+    private YouTubeClients(Context context) {
+        mContext = context;
+        // Read by HttpURLConnection when its connection pool is first used.
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(MAX_IDLE_CONNECTIONS));
+        // What AndroidHttp.newCompatibleTransport() picks from Gingerbread on.
+        mTransport = new NetHttpTransport();
+    }
+
+    /**
+     * Builds a client with the timeouts and application name every client of the app uses.
+     *
+     * @param credential initializes every request with the account's authorization
+     */
+    static YouTube build(HttpTransport transport, JsonFactory jsonFactory,
+                         final HttpRequestInitializer credential) {
+        return new YouTube.Builder(transport, jsonFactory, new HttpRequestInitializer() {
+            @Override
+            public void initialize(HttpRequest request) throws IOException {
+                credential.initialize(request);
+                request.setConnectTimeout(CONNECT_TIMEOUT_MS);
+                request.setReadTimeout(READ_TIMEOUT_MS);
+            }
+        }).setApplicationName(Constants.APP_NAME).build();
+    }
+
+    public static synchronized YouTubeClients getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new YouTubeClients(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    public HttpTransport getTransport() {
+        return mTransport;
+    }
+
+    public JsonFactory getJsonFactory() {
+        return mJsonFactory;
+    }
+
+    /**
+     * @return the client acting on behalf of the given account, built on first use
+     */
+    public synchronized YouTube get(String accountName) {
+        YouTube youtube = mClients.get(accountName);
+        if (youtube == null) {
+            GoogleAccountCredential credential =
+                    GoogleAccountCredential.usingOAuth2(mContext, Arrays.asList(Auth.SCOPES));
+            credential.setSelectedAccountName(accountName);
+            credential.setBackOff(new ExponentialBackOff());
+            youtube = build(mTransport, mJsonFactory, credential);
+            mClients.put(accountName, youtube);
+        }
+        return youtube;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+/**
+ * Connectivity as the platform reports it. Changes are picked up from the connectivity and power
+ * broadcasts while a listener is set.
+ */
+public class AndroidConnectivitySource implements ConnectivitySource {
+    private static final String TAG = "ConnectivitySource";
+    /**
+     * what a 2G connection is assumed to carry upstream, at best
+     */
+    private static final long SLOW_MOBILE_BANDWIDTH = 10 * 1024;
+
+    private final Context mContext;
+    private final ConnectivityManager mConnectivityManager;
+    private volatile Listener mListener;
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Listener listener = mListener;
+            if (listener != null) {
+                State state = getState();
+                Log.i(TAG, "Connectivity changed: " + state);
+                listener.onStateChanged(state);
+            }
+        }
+    };
+
+    public AndroidConnectivitySource(Context context) {
+        mContext = context.getApplicationContext();
+        mConnectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    private static boolean isSlowMobile(NetworkInfo info) {
+        if (info.getType() != ConnectivityManager.TYPE_MOBILE) {
+            return false;
+        }
+        switch (info.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public State getState() {
+        NetworkInfo info = mConnectivityManager.getActiveNetworkInfo();
+        boolean connected = info != null && info.isConnected();
+        Intent battery = mContext.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        boolean charging = battery != null
+                && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        long bandwidth = State.UNKNOWN_BANDWIDTH;
+        if (connected) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                bandwidth = getLinkBandwidth();
+            } else if (isSlowMobile(info)) {
+                bandwidth = SLOW_MOBILE_BANDWIDTH;
+            }
+        }
+        return new State(connected, connected && mConnectivityManager.isActiveNetworkMetered(),
+                charging, bandwidth);
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private long getLinkBandwidth() {
+        Network network = mConnectivityManager.getActiveNetwork();
+        NetworkCapabilities capabilities =
+                network == null ? null : mConnectivityManager.getNetworkCapabilities(network);
+        if (capabilities == null || capabilities.getLinkUpstreamBandwidthKbps() <= 0) {
+            return State.UNKNOWN_BANDWIDTH;
+        }
+        return capabilities.getLinkUpstreamBandwidthKbps() * 1000L / 8;
+    }
+
+    @Override
+    public synchronized void setListener(Listener listener) {
+        if (mListener == null && listener != null) {
+            IntentFilter filter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+            filter.addAction(Intent.ACTION_POWER_CONNECTED);
+            filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+            mContext.registerReceiver(mReceiver, filter);
+        } else if (mListener != null && listener == null) {
+            mContext.unregisterReceiver(mReceiver);
+        }
+        mListener = listener;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+/**
+ * Partial response masks, one per API call, so responses only carry the fields the app reads.
+ * See https://developers.google.com/youtube/v3/getting-started#partial
+ */
+public class ApiFields {
+    /**
+     * uploads playlist of the user's channel
+     */
+    public static final String CHANNEL_UPLOADS_PLAYLIST =
+            "items/contentDetails/relatedPlaylists/uploads";
+    /**
+     * video IDs of a page of the uploads playlist, with what's needed to revalidate and page on
+     */
+    public static final String PLAYLIST_PAGE = "etag,nextPageToken,items/contentDetails/videoId";
+    /**
+     * what the uploads grid shows
+     */
+    public static final String GRID_VIDEOS =
+            "etag,items(id,etag,snippet(title,publishedAt,tags),status/privacyStatus)";
+    /**
+     * the writable snippet fields, an update without them would clear them
+     */
+    public static final String TAGGABLE_SNIPPETS =
+            "items(id,snippet(title,description,tags,categoryId,defaultLanguage))";
+    public static final String PROCESSING_STATUS =
+            "items(id,processingDetails(processingStatus,processingProgress/timeLeftMs))";
+    /**
+     * responses of which only the video ID is used, like uploads and tag updates
+     */
+    public static final String VIDEO_ID = "id";
+    /**
+     * which of the listed videos still exist
+     */
+    public static final String VIDEO_IDS = "items/id";
+
+    private ApiFields() {
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.os.SystemClock;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Token bucket shared by all running uploads so that together they stay within one bandwidth
+ * budget. A caller may take more bytes than are available; it then waits until the debt would
+ * have been paid off at the budgeted rate.
+ */
+public class BandwidthLimiter {
+    private final long mBytesPerSecond;
+    private long mAvailable;
+    private long mLastRefill;
+
+    /**
+     * @param bytesPerSecond budget shared by all callers, or 0 for no limit
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+        mAvailable = bytesPerSecond;
+        mLastRefill = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Blocks until the given number of bytes may be sent.
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        if (mBytesPerSecond <= 0) {
+            return;
+        }
+        long waitMillis;
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            mAvailable = Math.min(mBytesPerSecond,
+                    mAvailable + (now - mLastRefill) * mBytesPerSecond / 1000);
+            mLastRefill = now;
+            mAvailable -= bytes;
+            waitMillis = mAvailable >= 0 ? 0 : -mAvailable * 1000 / mBytesPerSecond;
+        }
+        if (waitMillis > 0) {
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.graphics.Bitmap;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Bitmaps no longer cached or shown, kept to be decoded into again through
+ * {@link android.graphics.BitmapFactory.Options#inBitmap}. Before KitKat a bitmap can only be
+ * reused for an image of exactly its size, so bitmaps are bucketed by dimensions and config.
+ */
+public class BitmapPool {
+    private final int mMaxSize;
+    private final Map<String, LinkedList<Bitmap>> mBuckets = new HashMap<String, LinkedList<Bitmap>>();
+    private int mSize;
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * @param maxSize most bytes held by pooled bitmaps
+     */
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    private static String key(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + "-" + config;
+    }
+
+    private static int sizeOf(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * @return a bitmap to decode into, or null if none of that size is pooled
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        LinkedList<Bitmap> bucket = mBuckets.get(key(width, height, config));
+        if (bucket == null || bucket.isEmpty()) {
+            mMisses++;
+            return null;
+        }
+        Bitmap bitmap = bucket.removeFirst();
+        mSize -= sizeOf(bitmap);
+        mHits++;
+        return bitmap;
+    }
+
+    /**
+     * Offers a bitmap that is no longer shown anywhere. Dropped if the pool is full.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled() || mSize + sizeOf(bitmap) > mMaxSize) {
+            return;
+        }
+        String key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        LinkedList<Bitmap> bucket = mBuckets.get(key);
+        if (bucket == null) {
+            bucket = new LinkedList<Bitmap>();
+            mBuckets.put(key, bucket);
+        }
+        bucket.addLast(bitmap);
+        mSize += sizeOf(bitmap);
+    }
+
+    public synchronized int hitCount() {
+        return mHits;
+    }
+
+    public synchronized int missCount() {
+        return mMisses;
+    }
+}
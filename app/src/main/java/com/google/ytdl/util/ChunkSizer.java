@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+
+/**
+ * Picks the size of the next resumable upload chunk from the measured round-trip time and
+ * throughput. Chunks are kept large enough that the round trip of each request is a small
+ * fraction of its transfer time, and small enough that a failed chunk is cheap to send again.
+ */
+public class ChunkSizer {
+    /**
+     * Every chunk except the last one must be a multiple of this size.
+     */
+    public static final int CHUNK_GRANULARITY = MediaHttpUploader.MINIMUM_CHUNK_SIZE;
+    public static final int MIN_CHUNK_SIZE = CHUNK_GRANULARITY;
+    public static final int MAX_CHUNK_SIZE = 16 * CHUNK_GRANULARITY; // 4 MB
+    /**
+     * used until the first chunk has been measured
+     */
+    private static final int INITIAL_CHUNK_SIZE = 4 * CHUNK_GRANULARITY; // 1 MB
+    /**
+     * a chunk should take at least this many round trips to transfer
+     */
+    private static final int RTT_MULTIPLIER = 8;
+    /**
+     * a chunk should take at least this long to transfer
+     */
+    private static final long TARGET_CHUNK_MILLIS = 2000;
+    /**
+     * weight of the newest sample in the moving averages
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private long mRttMillis = -1;
+    private double mBytesPerMilli = -1;
+
+    private static double smooth(double average, double sample) {
+        return average < 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    public synchronized void recordRoundTrip(long millis) {
+        mRttMillis = (long) smooth(mRttMillis, Math.max(1, millis));
+    }
+
+    public synchronized void recordTransfer(long bytes, long millis) {
+        mBytesPerMilli = smooth(mBytesPerMilli, (double) bytes / Math.max(1, millis));
+    }
+
+    public synchronized int nextChunkSize() {
+        if (mBytesPerMilli < 0) {
+            return INITIAL_CHUNK_SIZE;
+        }
+        long targetMillis = Math.max(TARGET_CHUNK_MILLIS, mRttMillis * RTT_MULTIPLIER);
+        long size = (long) (mBytesPerMilli * targetMillis);
+        size -= size % CHUNK_GRANULARITY;
+        return (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+/**
+ * Where {@link UploadConstraints} learns about the network and power state. Implemented on top of
+ * the platform by {@link AndroidConnectivitySource}, and easily faked to simulate network changes.
+ */
+public interface ConnectivitySource {
+    public State getState();
+
+    /**
+     * @param listener told about every change from now on, or null to stop listening
+     */
+    public void setListener(Listener listener);
+
+    public interface Listener {
+        public void onStateChanged(State state);
+    }
+
+    /**
+     * Snapshot of the device's connectivity.
+     */
+    public static class State {
+        /**
+         * bandwidth estimate when none is available
+         */
+        public static final long UNKNOWN_BANDWIDTH = -1;
+
+        public final boolean connected;
+        public final boolean metered;
+        public final boolean charging;
+        /**
+         * estimated upstream bandwidth in bytes per second, or {@link #UNKNOWN_BANDWIDTH}
+         */
+        public final long bandwidth;
+
+        public State(boolean connected, boolean metered, boolean charging, long bandwidth) {
+            this.connected = connected;
+            this.metered = metered;
+            this.charging = charging;
+            this.bandwidth = bandwidth;
+        }
+
+        @Override
+        public String toString() {
+            return (connected ? "connected" : "disconnected") + (metered ? ", metered" : "")
+                    + (charging ? ", charging" : "") + ", bandwidth " + bandwidth + " B/s";
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Identifies a file by its size and a hash of evenly spaced blocks of it, so the same video is
+ * recognized under any URI without reading it all. Only a megabyte is read however large the file
+ * is, and the blocks are read and hashed in parallel with positional reads.
+ * <p/>
+ * Two files that differ only outside the sampled blocks get the same fingerprint. Videos that size
+ * differently or re-encode anywhere near the start, middle or end don't.
+ */
+public class ContentFingerprinter {
+    private static final String ALGORITHM = "SHA-256";
+    private static final int BLOCK_SIZE = 64 * 1024;
+    /**
+     * includes the first and the last block
+     */
+    private static final int BLOCKS = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ExecutorService mExecutor;
+
+    public ContentFingerprinter(int threads) {
+        mExecutor = Executors.newFixedThreadPool(threads);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to provide SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return the fingerprint of the channel's file as a hex string
+     */
+    public String fingerprint(FileChannel channel) throws IOException {
+        long size = channel.size();
+        // Small files are hashed completely, the blocks then cover the whole file.
+        int blocks = (int) Math.min(BLOCKS, (size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        List<Future<byte[]>> hashes = new ArrayList<Future<byte[]>>(blocks);
+        for (int i = 0; i < blocks; i++) {
+            long offset = blocks == 1 ? 0 : (size - BLOCK_SIZE) * i / (blocks - 1);
+            hashes.add(mExecutor.submit(new BlockHash(channel, offset)));
+        }
+
+        MessageDigest digest = newDigest();
+        digest.update(ByteBuffer.allocate(8).putLong(0, size));
+        try {
+            for (Future<byte[]> hash : hashes) {
+                digest.update(hash.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fingerprinting");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            // Without interrupting, that would close the channel under the other reads.
+            for (Future<byte[]> hash : hashes) {
+                hash.cancel(false);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Hashes the block at the given offset, or up to the end of the file if that is closer.
+     */
+    private static class BlockHash implements Callable<byte[]> {
+        private final FileChannel mChannel;
+        private final long mOffset;
+
+        BlockHash(FileChannel channel, long offset) {
+            mChannel = channel;
+            mOffset = offset;
+        }
+
+        @Override
+        public byte[] call() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+            while (buffer.hasRemaining()) {
+                if (mChannel.read(buffer, mOffset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            MessageDigest digest = newDigest();
+            digest.update(buffer);
+            return digest.digest();
+        }
+    }
+}
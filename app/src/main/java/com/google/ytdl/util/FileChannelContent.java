@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import com.google.api.client.http.AbstractInputStreamContent;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * HTTP content for a range of a file, read with positional reads straight from its
+ * {@link FileChannel} into a pooled buffer and from there into the connection. Nothing is staged
+ * in memory beyond that buffer, the range can start at any offset, and the content can be written
+ * again when a request is retried.
+ * <p/>
+ * The channel belongs to the caller, who closes it once the upload is over.
+ */
+public class FileChannelContent extends AbstractInputStreamContent {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * buffers kept for reuse, two per concurrent upload is plenty
+     */
+    private static final int MAX_POOLED_BUFFERS = 4;
+    private static final ConcurrentLinkedQueue<ByteBuffer> sBuffers =
+            new ConcurrentLinkedQueue<ByteBuffer>();
+
+    private final FileChannel mChannel;
+    private final long mOffset;
+    private final long mLength;
+
+    /**
+     * @param offset first byte of the range
+     * @param length bytes in the range
+     */
+    public FileChannelContent(String type, FileChannel channel, long offset, long length) {
+        super(type);
+        mChannel = channel;
+        mOffset = offset;
+        mLength = length;
+    }
+
+    // Heap buffers: the connection takes a byte array, which a direct buffer would need copying
+    // into.
+    private static ByteBuffer obtainBuffer() {
+        ByteBuffer buffer = sBuffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    private static void recycleBuffer(ByteBuffer buffer) {
+        if (sBuffers.size() < MAX_POOLED_BUFFERS) {
+            sBuffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Fills the buffer up to its limit from the given position, or throws if the file ends first.
+     */
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("File ended before the expected upload size");
+            }
+        }
+    }
+
+    @Override
+    public long getLength() {
+        return mLength;
+    }
+
+    @Override
+    public boolean retrySupported() {
+        return true;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer buffer = obtainBuffer();
+        try {
+            long position = mOffset;
+            long end = mOffset + mLength;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                read(buffer, position);
+                out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+                position += buffer.limit();
+            }
+            out.flush();
+        } finally {
+            recycleBuffer(buffer);
+        }
+    }
+
+    /**
+     * Only used by callers that want a stream rather than {@link #writeTo(OutputStream)}.
+     */
+    @Override
+    public InputStream getInputStream() {
+        return new InputStream() {
+            private long mPosition = mOffset;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                long remaining = mOffset + mLength - mPosition;
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = mChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)),
+                        mPosition);
+                if (n > 0) {
+                    mPosition += n;
+                }
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, mOffset + mLength - mPosition);
+            }
+        };
+    }
+
+    @Override
+    public FileChannelContent setType(String type) {
+        return (FileChannelContent) super.setType(type);
+    }
+
+    @Override
+    public FileChannelContent setCloseInputStream(boolean closeInputStream) {
+        return (FileChannelContent) super.setCloseInputStream(closeInputStream);
+    }
+}
@@ -21,8 +21,29 @@ import android.util.DisplayMetrics;
 
 import com.android.volley.toolbox.ImageLoader.ImageCache;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory cache in front of the Volley disk cache. Bitmaps shown by a
+ * {@link PooledNetworkImageView} are handed to a {@link BitmapPool} once they are out of the cache
+ * and no such view shows them any more.
+ * <p/>
+ * Eviction alone doesn't free a bitmap, views keep showing theirs after the cache dropped it. So a
+ * bitmap handed to any other view or listener is never pooled, it can't be told when that one
+ * lets go.
+ */
 public class LruBitmapCache extends LruCache<String, Bitmap>
         implements ImageCache {
+    private BitmapPool mBitmapPool;
+    /**
+     * number of tracked views showing each bitmap, guards the fields below
+     */
+    private final Map<Bitmap, Integer> mViewCounts = new IdentityHashMap<Bitmap, Integer>();
+    private final Set<Bitmap> mCached =
+            Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
 
     public LruBitmapCache(int maxSize) {
         super(maxSize);
@@ -44,6 +65,69 @@ public class LruBitmapCache extends LruCache<String, Bitmap>
         return screenBytes * 3;
     }
 
+    /**
+     * Recycles bitmaps through the given pool once they are out of the cache and off screen.
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    /**
+     * @return share of lookups served from memory, between 0 and 1
+     */
+    public synchronized float hitRate() {
+        int lookups = hitCount() + missCount();
+        return lookups == 0 ? 0 : (float) hitCount() / lookups;
+    }
+
+    /**
+     * Records that a tracked view shows the bitmap. Only bitmaps from this cache are tracked.
+     */
+    public void retain(Bitmap bitmap) {
+        synchronized (mViewCounts) {
+            Integer count = mViewCounts.get(bitmap);
+            if (count == null && !mCached.contains(bitmap)) {
+                return;
+            }
+            mViewCounts.put(bitmap, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Records that a tracked view no longer shows the bitmap.
+     */
+    public void release(Bitmap bitmap) {
+        synchronized (mViewCounts) {
+            Integer count = mViewCounts.get(bitmap);
+            if (count == null) {
+                return;
+            }
+            mViewCounts.put(bitmap, count - 1);
+            recycleIfUnused(bitmap);
+        }
+    }
+
+    private void recycleIfUnused(Bitmap bitmap) {
+        Integer count = mViewCounts.get(bitmap);
+        if (count != null && count == 0 && !mCached.contains(bitmap)) {
+            mViewCounts.remove(bitmap);
+            if (mBitmapPool != null) {
+                mBitmapPool.put(bitmap);
+            }
+        }
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+        if (oldValue == newValue) {
+            return;
+        }
+        synchronized (mViewCounts) {
+            mCached.remove(oldValue);
+            recycleIfUnused(oldValue);
+        }
+    }
+
     @Override
     protected int sizeOf(String key, Bitmap value) {
         return value.getRowBytes() * value.getHeight();
@@ -56,6 +140,9 @@ public class LruBitmapCache extends LruCache<String, Bitmap>
 
     @Override
     public void putBitmap(String url, Bitmap bitmap) {
+        synchronized (mViewCounts) {
+            mCached.add(bitmap);
+        }
         put(url, bitmap);
     }
 }
\ No newline at end of file
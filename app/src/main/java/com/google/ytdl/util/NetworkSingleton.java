@@ -18,21 +18,35 @@ import android.content.Context;
 
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.ImageLoader;
-import com.android.volley.toolbox.Volley;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HurlStack;
+import com.google.ytdl.Constants;
+
+import java.io.File;
 
 public class NetworkSingleton {
+    private static final String DISK_CACHE_DIR = "volley";
+    // Encoded images kept on disk, roughly a thousand medium thumbnails
+    private static final int DISK_CACHE_SIZE = 20 * 1024 * 1024;
     private static NetworkSingleton mInstance;
     private static Context mCtx;
     private RequestQueue mRequestQueue;
-    private ImageLoader mImageLoader;
+    private PooledImageLoader mImageLoader;
+    private LruBitmapCache mBitmapCache;
+    private BitmapPool mBitmapPool;
 
     private NetworkSingleton(Context context) {
         mCtx = context;
         mRequestQueue = getRequestQueue();
 
-        mImageLoader = new ImageLoader(mRequestQueue,
-                new LruBitmapCache(context));
+        int cacheSize = LruBitmapCache.getCacheSize(context);
+        mBitmapCache = new LruBitmapCache(cacheSize);
+        // One screen of released bitmaps is enough to keep a scrolling grid from allocating.
+        mBitmapPool = new BitmapPool(cacheSize / 3);
+        mBitmapCache.setBitmapPool(mBitmapPool);
+        mImageLoader = new PooledImageLoader(mRequestQueue, mBitmapCache, mBitmapPool, null,
+                Request.Priority.NORMAL);
     }
 
     public static synchronized NetworkSingleton getInstance(Context context) {
@@ -46,7 +60,12 @@ public class NetworkSingleton {
         if (mRequestQueue == null) {
             // getApplicationContext() is key, it keeps you from leaking the
             // Activity or BroadcastReceiver if someone passes one in.
-            mRequestQueue = Volley.newRequestQueue(mCtx.getApplicationContext());
+            File cacheDir = new File(mCtx.getApplicationContext().getCacheDir(), DISK_CACHE_DIR);
+            // Identical cacheable requests are held back while one of them is on the network, and
+            // then answered from the disk cache.
+            mRequestQueue = new RequestQueue(new DiskBasedCache(cacheDir, DISK_CACHE_SIZE),
+                    new BasicNetwork(new HurlStack()), Constants.NETWORK_THREAD_POOL_SIZE);
+            mRequestQueue.start();
         }
         return mRequestQueue;
     }
@@ -55,7 +74,51 @@ public class NetworkSingleton {
         getRequestQueue().add(req);
     }
 
-    public ImageLoader getImageLoader() {
+    /**
+     * Queues a request on behalf of a screen, it is dropped by {@link #cancelAll(Object)} with the
+     * same tag.
+     */
+    public <T> void addToRequestQueue(Request<T> req, Object tag) {
+        req.setTag(tag);
+        addToRequestQueue(req);
+    }
+
+    /**
+     * @return the image loader of requests not bound to any screen, like notification pictures
+     */
+    public PooledImageLoader getImageLoader() {
         return mImageLoader;
     }
+
+    public LruBitmapCache getBitmapCache() {
+        return mBitmapCache;
+    }
+
+    /**
+     * Creates an image loader for one screen. It shares the caches with every other loader and
+     * tags its requests, so they can be dropped with {@link #cancelAll(Object)} when the screen
+     * goes away. The loader must not be used after that.
+     *
+     * @param priority of the images on screen, prefetches are served after them
+     */
+    public PooledImageLoader newImageLoader(Object tag, Request.Priority priority) {
+        return new PooledImageLoader(mRequestQueue, mBitmapCache, mBitmapPool, tag, priority);
+    }
+
+    /**
+     * Cancels every queued or running request with the given tag.
+     */
+    public void cancelAll(Object tag) {
+        mRequestQueue.cancelAll(tag);
+    }
+
+    /**
+     * @return memory cache hit rate, bitmap reuse and decode time, for logging
+     */
+    public String getStats() {
+        return String.format("memory hit rate %.2f, pooled bitmaps reused %d of %d, "
+                        + "%d decodes averaging %d ms", mBitmapCache.hitRate(),
+                mBitmapPool.hitCount(), mBitmapPool.hitCount() + mBitmapPool.missCount(),
+                PooledImageLoader.getDecodeCount(), PooledImageLoader.getAverageDecodeTimeMs());
+    }
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.ImageView.ScaleType;
+
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.ImageLoader;
+import com.android.volley.toolbox.ImageRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImageLoader that decodes into bitmaps from a {@link BitmapPool} and keeps images in the disk
+ * cache long after their HTTP expiry, so scrolling and cold starts rarely hit the network.
+ */
+public class PooledImageLoader extends ImageLoader {
+    private static final String TAG = "PooledImageLoader";
+    /**
+     * Thumbnails are addressed by video ID and hardly ever change.
+     */
+    private static final long MIN_DISK_TTL_MS = TimeUnit.DAYS.toMillis(7);
+    private static final Bitmap.Config DECODE_CONFIG = Bitmap.Config.RGB_565;
+    /**
+     * Decodes one image at a time, like Volley does, to keep peak memory down.
+     */
+    private static final Object DECODE_LOCK = new Object();
+
+    // Shared by the loaders of all screens, like the pool and the cache.
+    private static int sDecodes;
+    private static long sDecodeTimeMs;
+
+    private final BitmapPool mPool;
+    private final Object mTag;
+    private final Request.Priority mDefaultPriority;
+    /**
+     * priority of the request the next {@link #makeImageRequest} call makes
+     */
+    private Request.Priority mPriority;
+
+    /**
+     * @param tag      set on every request, so the requests of one screen can be cancelled at once,
+     *                 or null
+     * @param priority of the requests for images on screen
+     */
+    public PooledImageLoader(RequestQueue queue, ImageCache imageCache, BitmapPool pool, Object tag,
+                             Request.Priority priority) {
+        super(queue, imageCache);
+        mPool = pool;
+        mTag = tag;
+        mDefaultPriority = priority;
+        mPriority = priority;
+    }
+
+    /**
+     * Largest power of two that keeps the image at least as large as requested in both
+     * dimensions, 0 meaning unbounded.
+     */
+    private static int sampleSize(int width, int height, int maxWidth, int maxHeight) {
+        int sampleSize = 1;
+        while ((maxWidth == 0 || width / (sampleSize * 2) >= maxWidth)
+                && (maxHeight == 0 || height / (sampleSize * 2) >= maxHeight)
+                && (maxWidth != 0 || maxHeight != 0)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Like {@link #get(String, ImageListener, int, int, ScaleType)}, but a request it starts is only
+     * served once no image on screen is waiting. Must be called on the main thread.
+     */
+    public ImageContainer prefetch(String requestUrl, ImageListener listener, int maxWidth,
+                                   int maxHeight, ScaleType scaleType) {
+        mPriority = Request.Priority.LOW;
+        try {
+            return get(requestUrl, listener, maxWidth, maxHeight, scaleType);
+        } finally {
+            mPriority = mDefaultPriority;
+        }
+    }
+
+    public static synchronized int getDecodeCount() {
+        return sDecodes;
+    }
+
+    /**
+     * @return average time spent decoding an image in ms
+     */
+    public static synchronized long getAverageDecodeTimeMs() {
+        return sDecodes == 0 ? 0 : sDecodeTimeMs / sDecodes;
+    }
+
+    private static synchronized void recordDecode(long millis) {
+        sDecodes++;
+        sDecodeTimeMs += millis;
+    }
+
+    private Bitmap decode(byte[] data, int maxWidth, int maxHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = DECODE_CONFIG;
+        options.inMutable = true;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, maxWidth, maxHeight);
+        // Before KitKat only unsampled images can be decoded into an existing bitmap.
+        if (options.inSampleSize == 1 || Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            options.inBitmap = mPool.get(options.outWidth / options.inSampleSize,
+                    options.outHeight / options.inSampleSize, DECODE_CONFIG);
+        }
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap didn't fit after all.
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    @Override
+    protected Request<Bitmap> makeImageRequest(String requestUrl, int maxWidth, int maxHeight,
+                                               ScaleType scaleType, final String cacheKey) {
+        Response.Listener<Bitmap> listener = new Response.Listener<Bitmap>() {
+            @Override
+            public void onResponse(Bitmap response) {
+                onGetImageSuccess(cacheKey, response);
+            }
+        };
+        Response.ErrorListener errorListener = new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                onGetImageError(cacheKey, error);
+            }
+        };
+        PooledImageRequest request = new PooledImageRequest(requestUrl, listener, maxWidth,
+                maxHeight, scaleType, errorListener, mPriority);
+        request.setTag(mTag);
+        return request;
+    }
+
+    private class PooledImageRequest extends ImageRequest {
+        private final int mMaxWidth;
+        private final int mMaxHeight;
+        private final Priority mPriority;
+
+        PooledImageRequest(String url, Response.Listener<Bitmap> listener, int maxWidth,
+                           int maxHeight, ScaleType scaleType,
+                           Response.ErrorListener errorListener, Priority priority) {
+            super(url, listener, maxWidth, maxHeight, scaleType, DECODE_CONFIG, errorListener);
+            mMaxWidth = maxWidth;
+            mMaxHeight = maxHeight;
+            mPriority = priority;
+        }
+
+        /**
+         * ImageRequest makes every image LOW, that is left to prefetches here.
+         */
+        @Override
+        public Priority getPriority() {
+            return mPriority;
+        }
+
+        @Override
+        protected Response<Bitmap> parseNetworkResponse(NetworkResponse response) {
+            Bitmap bitmap;
+            synchronized (DECODE_LOCK) {
+                long start = SystemClock.elapsedRealtime();
+                try {
+                    bitmap = decode(response.data, mMaxWidth, mMaxHeight);
+                } catch (OutOfMemoryError e) {
+                    Log.e(TAG, "Out of memory decoding " + getUrl());
+                    return Response.error(new ParseError(e));
+                }
+                recordDecode(SystemClock.elapsedRealtime() - start);
+            }
+            if (bitmap == null) {
+                return Response.error(new ParseError(response));
+            }
+
+            Cache.Entry entry = HttpHeaderParser.parseCacheHeaders(response);
+            if (entry != null) {
+                long keepUntil = System.currentTimeMillis() + MIN_DISK_TTL_MS;
+                entry.softTtl = Math.max(entry.softTtl, keepUntil);
+                entry.ttl = Math.max(entry.ttl, keepUntil);
+            }
+            return Response.success(bitmap, entry);
+        }
+    }
+}
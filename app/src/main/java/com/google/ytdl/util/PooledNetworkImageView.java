@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+
+import com.android.volley.toolbox.NetworkImageView;
+
+/**
+ * NetworkImageView that tells the {@link LruBitmapCache} which bitmap it shows, so the bitmap can
+ * be decoded into again once neither the cache nor any view holds it.
+ */
+public class PooledNetworkImageView extends NetworkImageView {
+    /**
+     * null while the superclass constructor runs and in layout previews
+     */
+    private LruBitmapCache mCache;
+    private Bitmap mBitmap;
+
+    public PooledNetworkImageView(Context context) {
+        this(context, null);
+    }
+
+    public PooledNetworkImageView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public PooledNetworkImageView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        if (!isInEditMode()) {
+            mCache = NetworkSingleton.getInstance(context.getApplicationContext()).getBitmapCache();
+        }
+    }
+
+    // setImageBitmap() ends up here too.
+    @Override
+    public void setImageDrawable(Drawable drawable) {
+        super.setImageDrawable(drawable);
+        show(drawable instanceof BitmapDrawable ? ((BitmapDrawable) drawable).getBitmap() : null);
+    }
+
+    @Override
+    public void setImageResource(int resId) {
+        super.setImageResource(resId);
+        show(null);
+    }
+
+    private void show(Bitmap bitmap) {
+        if (mCache == null || bitmap == mBitmap) {
+            return;
+        }
+        if (bitmap != null) {
+            mCache.retain(bitmap);
+        }
+        if (mBitmap != null) {
+            mCache.release(mBitmap);
+        }
+        mBitmap = bitmap;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.ytdl.util;
+
+/**
+ * Decides which progress updates of an upload are worth posting. An update goes out once both the
+ * interval and the step have passed since the last one, and the first and the final update always
+ * go out. Progress is computed in long arithmetic, so files above 2 GB are fine.
+ */
+public class ProgressThrottle {
+    private final long mIntervalMs;
+    private final int mStepPercent;
+    private long mLastPostTime;
+    private int mLastPercent = -1;
+
+    /**
+     * @param intervalMs  least time between two updates, 0 to not limit it
+     * @param stepPercent least progress between two updates, 0 to not limit it
+     */
+    public ProgressThrottle(long intervalMs, int stepPercent) {
+        mIntervalMs = intervalMs;
+        mStepPercent = stepPercent;
+    }
+
+    public static int percent(long bytesUploaded, long totalBytes) {
+        return totalBytes > 0 ? (int) (bytesUploaded * 100 / totalBytes) : 0;
+    }
+
+    /**
+     * @param nowMs time on a monotonic clock
+     * @return true if the update should be posted, it then counts as the last one
+     */
+    public boolean onProgress(long nowMs, long bytesUploaded, long totalBytes) {
+        int percent = percent(bytesUploaded, totalBytes);
+        boolean finished = bytesUploaded >= totalBytes;
+        if (!finished && mLastPercent >= 0 && (nowMs - mLastPostTime < mIntervalMs
+                || percent - mLastPercent < mStepPercent)) {
+            return false;
+        }
+        mLastPercent = percent;
+        mLastPostTime = nowMs;
+        return true;
+    }
+
+    /**
+     * Records that something else was posted, such as a status line, which also counts against
+     * the interval.
+     */
+    public void onPosted(long nowMs) {
+        mLastPostTime = nowMs;
+    }
+
+    /**
+     * @return the progress last posted in percent, or -1 if none was
+     */
+    public int getLastPercent() {
+        return mLastPercent;
+    }
+}
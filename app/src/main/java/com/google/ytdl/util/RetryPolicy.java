@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAuthIOException;
+import com.google.api.client.googleapis.extensions.android.gms.auth.GooglePlayServicesAvailabilityIOException;
+import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether and when a failed upload attempt is retried. Errors are classified by cause,
+ * transient ones are retried with decorrelated-jitter exponential backoff and permanent ones fail
+ * right away. An attempt that got more bytes committed resets the backoff.
+ */
+public class RetryPolicy {
+    private static final long BASE_DELAY_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_DELAY_MS = TimeUnit.MINUTES.toMillis(5);
+    /**
+     * shortest wait after the API reported a rate limit
+     */
+    private static final long RATE_LIMIT_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * gives the user time to grant access before the next attempt
+     */
+    private static final long AUTH_DELAY_MS = TimeUnit.SECONDS.toMillis(60);
+    private static final int STATUS_CODE_REQUEST_TIMEOUT = 408;
+    private static final int STATUS_CODE_NOT_FOUND = 404;
+    private static final int STATUS_CODE_GONE = 410;
+    private static final int STATUS_CODE_FORBIDDEN = 403;
+    private static final int STATUS_CODE_TOO_MANY_REQUESTS = 429;
+    private static final int STATUS_CODE_SERVER_ERROR = 500;
+
+    private final int mMaxRetries;
+    private final Random mRandom = new Random();
+    private final List<Attempt> mAttempts = new ArrayList<Attempt>();
+    private int mRetriesWithoutProgress;
+    private long mLastDelayMs = BASE_DELAY_MS;
+
+    /**
+     * @param maxRetries how many attempts in a row may fail without committing any bytes
+     */
+    public RetryPolicy(int maxRetries) {
+        mMaxRetries = maxRetries;
+    }
+
+    public static ErrorClass classify(IOException e) {
+        if (e instanceof HttpResponseException) {
+            int statusCode = ((HttpResponseException) e).getStatusCode();
+            if (statusCode == STATUS_CODE_NOT_FOUND || statusCode == STATUS_CODE_GONE) {
+                return ErrorClass.SESSION_EXPIRED;
+            }
+            if (statusCode == STATUS_CODE_REQUEST_TIMEOUT || statusCode >= STATUS_CODE_SERVER_ERROR) {
+                return ErrorClass.TRANSIENT;
+            }
+            if (statusCode == STATUS_CODE_TOO_MANY_REQUESTS) {
+                return ErrorClass.RATE_LIMITED;
+            }
+            if (statusCode == STATUS_CODE_FORBIDDEN) {
+                String reason = reason(e);
+                if ("rateLimitExceeded".equals(reason) || "userRateLimitExceeded".equals(reason)) {
+                    return ErrorClass.RATE_LIMITED;
+                }
+                if ("quotaExceeded".equals(reason) || "dailyLimitExceeded".equals(reason)
+                        || "uploadLimitExceeded".equals(reason)) {
+                    return ErrorClass.QUOTA_EXCEEDED;
+                }
+            }
+            return ErrorClass.PERMANENT;
+        }
+        if (e instanceof GooglePlayServicesAvailabilityIOException) {
+            return ErrorClass.PERMANENT;
+        }
+        if (e instanceof UserRecoverableAuthIOException) {
+            return ErrorClass.AUTH_REQUIRED;
+        }
+        if (e instanceof GoogleAuthIOException || e instanceof FileNotFoundException
+                || e instanceof EOFException) {
+            return ErrorClass.PERMANENT;
+        }
+        // Socket resets, timeouts and lookups failing while the network comes and goes.
+        return ErrorClass.TRANSIENT;
+    }
+
+    private static String reason(IOException e) {
+        if (!(e instanceof GoogleJsonResponseException)) {
+            return null;
+        }
+        GoogleJsonError details = ((GoogleJsonResponseException) e).getDetails();
+        if (details == null || details.getErrors() == null || details.getErrors().isEmpty()) {
+            return null;
+        }
+        return details.getErrors().get(0).getReason();
+    }
+
+    private static long retryAfterMs(IOException e) {
+        if (!(e instanceof HttpResponseException)) {
+            return 0;
+        }
+        String retryAfter = ((HttpResponseException) e).getHeaders().getRetryAfter();
+        try {
+            return retryAfter == null ? 0 : TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter));
+        } catch (NumberFormatException ignored) {
+            // An HTTP date, fall back to our own backoff.
+            return 0;
+        }
+    }
+
+    /**
+     * Records a failed attempt.
+     *
+     * @param durationMs     how long the attempt ran
+     * @param bytesCommitted bytes the server acknowledged during the attempt
+     * @return how long to wait before the next attempt in ms, or -1 to give up
+     */
+    public long onFailure(IOException e, long durationMs, long bytesCommitted) {
+        ErrorClass errorClass = classify(e);
+        if (bytesCommitted > 0) {
+            mRetriesWithoutProgress = 0;
+            mLastDelayMs = BASE_DELAY_MS;
+        }
+
+        long delayMs;
+        switch (errorClass) {
+            case SESSION_EXPIRED:
+                // Nothing to wait for, the next attempt starts a new session.
+                delayMs = ++mRetriesWithoutProgress > mMaxRetries ? -1 : 0;
+                break;
+            case AUTH_REQUIRED:
+                delayMs = ++mRetriesWithoutProgress > mMaxRetries ? -1 : AUTH_DELAY_MS;
+                break;
+            case TRANSIENT:
+            case RATE_LIMITED:
+                if (++mRetriesWithoutProgress > mMaxRetries) {
+                    delayMs = -1;
+                    break;
+                }
+                // Decorrelated jitter: a random wait between the base and three times the last one.
+                long upper = Math.min(MAX_DELAY_MS, mLastDelayMs * 3);
+                delayMs = BASE_DELAY_MS + (long) (mRandom.nextDouble() * (upper - BASE_DELAY_MS));
+                if (errorClass == ErrorClass.RATE_LIMITED) {
+                    delayMs = Math.max(delayMs, RATE_LIMIT_DELAY_MS);
+                }
+                delayMs = Math.min(MAX_DELAY_MS, Math.max(delayMs, retryAfterMs(e)));
+                mLastDelayMs = delayMs;
+                break;
+            default:
+                delayMs = -1;
+                break;
+        }
+        mAttempts.add(new Attempt(mAttempts.size() + 1, errorClass, durationMs, bytesCommitted,
+                delayMs));
+        return delayMs;
+    }
+
+    public void onSuccess(long durationMs, long bytesCommitted) {
+        mAttempts.add(new Attempt(mAttempts.size() + 1, null, durationMs, bytesCommitted, -1));
+    }
+
+    /**
+     * @return every attempt recorded so far, oldest first
+     */
+    public List<Attempt> getAttempts() {
+        return Collections.unmodifiableList(mAttempts);
+    }
+
+    public enum ErrorClass {
+        /**
+         * network failures and server errors, retried with backoff
+         */
+        TRANSIENT,
+        /**
+         * too many requests, retried with a longer backoff
+         */
+        RATE_LIMITED,
+        /**
+         * the resumable session is gone, retried at once with a new session
+         */
+        SESSION_EXPIRED,
+        /**
+         * the user was asked to grant access, retried after giving them time to do so
+         */
+        AUTH_REQUIRED,
+        /**
+         * the daily quota is used up, retrying today won't help
+         */
+        QUOTA_EXCEEDED,
+        /**
+         * bad requests, auth failures and unreadable files
+         */
+        PERMANENT
+    }
+
+    /**
+     * Metrics of one upload attempt.
+     */
+    public static class Attempt {
+        public final int number;
+        /**
+         * cause of the failure, or null if the attempt succeeded
+         */
+        public final ErrorClass errorClass;
+        public final long durationMs;
+        public final long bytesCommitted;
+        /**
+         * wait before the next attempt, or -1 if there is none
+         */
+        public final long delayMs;
+
+        Attempt(int number, ErrorClass errorClass, long durationMs, long bytesCommitted,
+                long delayMs) {
+            this.number = number;
+            this.errorClass = errorClass;
+            this.durationMs = durationMs;
+            this.bytesCommitted = bytesCommitted;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public String toString() {
+            return "attempt " + number + ": " + (errorClass == null ? "succeeded" : errorClass)
+                    + " after " + durationMs + " ms, " + bytesCommitted + " bytes committed"
+                    + (delayMs >= 0 ? ", retrying in " + delayMs + " ms" : "");
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ThumbnailUtils;
+import android.net.Uri;
+import android.os.Process;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Generates thumbnails of local videos off the calling thread and keeps them in memory and on
+ * disk. Thumbnails are keyed by content URI, modification time and size, so an edited file gets a
+ * new one while retries and other screens reuse the cached frame.
+ */
+public class ThumbnailCache {
+    private static final String TAG = "ThumbnailCache";
+    private static final String DIRECTORY = "video_thumbnails";
+    private static final int MEMORY_CACHE_SIZE = 1024 * 1024;
+    /**
+     * thumbnails kept on disk, the least recently written ones are deleted first
+     */
+    private static final int MAX_DISK_ENTRIES = 64;
+    private static final int JPEG_QUALITY = 85;
+    private static ThumbnailCache mInstance;
+
+    private final Context mContext;
+    private final File mDirectory;
+    private final LruBitmapCache mMemoryCache = new LruBitmapCache(MEMORY_CACHE_SIZE);
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, TAG);
+        }
+    });
+
+    private ThumbnailCache(Context context) {
+        mContext = context;
+        mDirectory = new File(context.getCacheDir(), DIRECTORY);
+    }
+
+    public static synchronized ThumbnailCache getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes());
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    /**
+     * Generates the thumbnail ahead of time, e.g. while the user reviews a video before uploading.
+     */
+    public void prefetch(Uri videoUri) {
+        load(videoUri, null);
+    }
+
+    /**
+     * Looks the thumbnail up, generating it if needed.
+     *
+     * @param callback called on a background thread, may be null
+     */
+    public void load(final Uri videoUri, final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap thumbnail = getOrCreate(videoUri);
+                if (callback != null) {
+                    callback.onThumbnail(videoUri, thumbnail);
+                }
+            }
+        });
+    }
+
+    private Bitmap getOrCreate(Uri videoUri) {
+        String path = queryPath(videoUri);
+        if (path == null) {
+            return null;
+        }
+        File video = new File(path);
+        String key = videoUri + "|" + video.lastModified() + "|" + video.length();
+
+        Bitmap thumbnail = mMemoryCache.getBitmap(key);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        File file = new File(mDirectory, hash(key) + ".jpg");
+        thumbnail = BitmapFactory.decodeFile(file.getPath());
+        if (thumbnail == null) {
+            thumbnail = ThumbnailUtils.createVideoThumbnail(path,
+                    MediaStore.Video.Thumbnails.MICRO_KIND);
+            if (thumbnail == null) {
+                return null;
+            }
+            write(file, thumbnail);
+        }
+        mMemoryCache.putBitmap(key, thumbnail);
+        return thumbnail;
+    }
+
+    private String queryPath(Uri videoUri) {
+        if ("file".equals(videoUri.getScheme())) {
+            return videoUri.getPath();
+        }
+        String[] proj = {MediaStore.Video.Media.DATA};
+        Cursor cursor = null;
+        try {
+            cursor = mContext.getContentResolver().query(videoUri, proj, null, null, null);
+            return cursor != null && cursor.moveToFirst() ? cursor.getString(0) : null;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Can't resolve " + videoUri, e);
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private void write(File file, Bitmap thumbnail) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            thumbnail.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Can't write " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        trim();
+    }
+
+    private void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null || files.length <= MAX_DISK_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_DISK_ENTRIES; i++) {
+            files[i].delete();
+        }
+    }
+
+    public interface Callback {
+        /**
+         * @param thumbnail the thumbnail, or null if none could be generated
+         */
+        public void onThumbnail(Uri videoUri, Bitmap thumbnail);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.widget.ImageView.ScaleType;
+
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.ImageLoader.ImageContainer;
+import com.android.volley.toolbox.ImageLoader.ImageListener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads the thumbnails of the rows a scrolling grid is heading to, so fast flings don't show blank
+ * cells. The faster the scroll, the more rows ahead are fetched, up to a memory budget. Fetches
+ * run at low priority and are cancelled once their rows leave the prefetch window.
+ * <p/>
+ * Must be used from the main thread.
+ */
+public class ThumbnailPrefetcher {
+    /**
+     * rows fetched ahead even when the grid is at rest
+     */
+    private static final int MIN_ROWS_AHEAD = 1;
+    /**
+     * how far ahead the scroll speed is extrapolated
+     */
+    private static final long LOOKAHEAD_MS = 1000;
+    // RGB_565, see PooledImageLoader
+    private static final int BYTES_PER_PIXEL = 2;
+
+    private final PooledImageLoader mImageLoader;
+    private final List<VideoData> mVideos;
+    /**
+     * bytes of thumbnails that may be fetched ahead, a third of the memory cache so prefetches
+     * don't evict what's on screen
+     */
+    private final int mBudgetBytes;
+    private final Map<String, ImageContainer> mInFlight = new HashMap<String, ImageContainer>();
+    private int mWidth;
+    private int mHeight;
+    private ScaleType mScaleType;
+    private int mLastFirstVisible = -1;
+    private long mLastScrollTime;
+    /**
+     * scroll speed in items per second, negative when scrolling up
+     */
+    private float mVelocity;
+
+    /**
+     * @param videos the videos the grid shows, read at every scroll
+     */
+    public ThumbnailPrefetcher(Context context, PooledImageLoader imageLoader,
+                               List<VideoData> videos) {
+        mImageLoader = imageLoader;
+        mVideos = videos;
+        mBudgetBytes = LruBitmapCache.getCacheSize(context) / 3;
+    }
+
+    /**
+     * Sets the size thumbnails are requested at, which has to match the grid's image views for
+     * their requests to find the prefetched bitmaps.
+     */
+    public void setThumbnailSize(int width, int height, ScaleType scaleType) {
+        if (width != mWidth || height != mHeight || scaleType != mScaleType) {
+            cancelAll();
+            mWidth = width;
+            mHeight = height;
+            mScaleType = scaleType;
+        }
+    }
+
+    /**
+     * Moves the prefetch window along with the grid.
+     */
+    public void onScroll(int firstVisible, int visibleCount, int columns) {
+        if (firstVisible == mLastFirstVisible || mWidth == 0 || mHeight == 0 || columns <= 0) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (mLastFirstVisible >= 0 && now > mLastScrollTime) {
+            mVelocity = (firstVisible - mLastFirstVisible) * 1000f / (now - mLastScrollTime);
+        }
+        mLastFirstVisible = firstVisible;
+        mLastScrollTime = now;
+
+        int maxItems = mBudgetBytes / (mWidth * mHeight * BYTES_PER_PIXEL);
+        int rowsAhead = Math.max(MIN_ROWS_AHEAD,
+                (int) Math.ceil(Math.abs(mVelocity) * LOOKAHEAD_MS / 1000f / columns));
+        int count = Math.min(maxItems, rowsAhead * columns);
+        int start;
+        int end;
+        if (mVelocity < 0) {
+            end = firstVisible;
+            start = Math.max(0, end - count);
+        } else {
+            start = firstVisible + visibleCount;
+            end = Math.min(mVideos.size(), start + count);
+        }
+
+        Set<String> window = new HashSet<String>();
+        for (int i = start; i < end; i++) {
+            window.add(mVideos.get(i).getThumbUri());
+        }
+        for (Iterator<Map.Entry<String, ImageContainer>> it = mInFlight.entrySet().iterator();
+             it.hasNext(); ) {
+            Map.Entry<String, ImageContainer> entry = it.next();
+            if (!window.contains(entry.getKey())) {
+                entry.getValue().cancelRequest();
+                it.remove();
+            }
+        }
+        for (final String url : window) {
+            if (mInFlight.containsKey(url)) {
+                continue;
+            }
+            ImageContainer container = mImageLoader.prefetch(url, new ImageListener() {
+                @Override
+                public void onResponse(ImageContainer response, boolean isImmediate) {
+                    if (response.getBitmap() != null) {
+                        mInFlight.remove(url);
+                    }
+                }
+
+                @Override
+                public void onErrorResponse(VolleyError error) {
+                    mInFlight.remove(url);
+                }
+            }, mWidth, mHeight, mScaleType);
+            // Thumbnails already in memory are answered right away.
+            if (container.getBitmap() == null) {
+                mInFlight.put(url, container);
+            }
+        }
+    }
+
+    public void cancelAll() {
+        for (ImageContainer container : mInFlight.values()) {
+            container.cancelRequest();
+        }
+        mInFlight.clear();
+        mLastFirstVisible = -1;
+        mVelocity = 0;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Decides whether the current network and power state allow an upload to send data, and holds
+ * uploads back until they do. Uploads check before every chunk, so they pause at a committed
+ * offset when the network changes and continue from there without sending any byte twice.
+ */
+public class UploadConstraints implements ConnectivitySource.Listener {
+    private final ConnectivitySource mSource;
+    private final long mUnmeteredAbove;
+    private final long mMinBandwidth;
+    private final boolean mRequireCharging;
+    private ConnectivitySource.State mState;
+
+    /**
+     * @param unmeteredAbove  files larger than this many bytes only go over unmetered networks, or
+     *                        -1 to allow metered networks for every file
+     * @param minBandwidth    least estimated upstream bandwidth in bytes per second, networks
+     *                        without an estimate are allowed
+     * @param requireCharging whether uploads only run while the device is charging
+     */
+    public UploadConstraints(ConnectivitySource source, long unmeteredAbove, long minBandwidth,
+                             boolean requireCharging) {
+        mSource = source;
+        mUnmeteredAbove = unmeteredAbove;
+        mMinBandwidth = minBandwidth;
+        mRequireCharging = requireCharging;
+    }
+
+    /**
+     * Starts following connectivity changes.
+     */
+    public void start() {
+        synchronized (this) {
+            mState = mSource.getState();
+        }
+        mSource.setListener(this);
+    }
+
+    public void stop() {
+        mSource.setListener(null);
+    }
+
+    @Override
+    public synchronized void onStateChanged(ConnectivitySource.State state) {
+        mState = state;
+        notifyAll();
+    }
+
+    /**
+     * @param fileSize size of the file to upload in bytes
+     */
+    public synchronized boolean isSatisfied(long fileSize) {
+        ConnectivitySource.State state = mState != null ? mState : mSource.getState();
+        return state.connected
+                && (!state.metered || mUnmeteredAbove < 0 || fileSize <= mUnmeteredAbove)
+                && (state.bandwidth == ConnectivitySource.State.UNKNOWN_BANDWIDTH
+                || state.bandwidth >= mMinBandwidth)
+                && (!mRequireCharging || state.charging);
+    }
+
+    /**
+     * Blocks until an upload of the given size may send data.
+     */
+    public synchronized void await(long fileSize) throws InterruptedIOException {
+        while (!isSatisfied(fileSize)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a network");
+            }
+        }
+    }
+}
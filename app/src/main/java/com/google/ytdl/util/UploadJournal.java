@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Durable record of every upload the service has accepted, so queued and in-flight uploads survive
+ * the process being killed and can continue their resumable session where the server left off.
+ */
+public class UploadJournal extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "uploads.db";
+    private static final int DATABASE_VERSION = 4;
+    private static final String TABLE_UPLOADS = "uploads";
+    private static final String COLUMN_ID = "_id";
+    private static final String COLUMN_URI = "uri";
+    private static final String COLUMN_ACCOUNT = "account";
+    private static final String COLUMN_SIZE = "size";
+    private static final String COLUMN_SESSION_URL = "session_url";
+    private static final String COLUMN_COMMITTED_OFFSET = "committed_offset";
+    private static final String COLUMN_STATE = "state";
+    private static final String COLUMN_VIDEO_ID = "video_id";
+    private static final String COLUMN_ATTEMPTS = "attempts";
+    private static final String COLUMN_CREATED = "created";
+    private static final String COLUMN_PRIORITY = "priority";
+    private static final String COLUMN_FINGERPRINT = "fingerprint";
+    private static final String COLUMN_PROCESSING_SINCE = "processing_since";
+    private static final String INDEX_FINGERPRINT = "uploads_fingerprint";
+    private static final String[] ALL_COLUMNS = {COLUMN_ID, COLUMN_URI, COLUMN_ACCOUNT,
+            COLUMN_SIZE, COLUMN_SESSION_URL, COLUMN_COMMITTED_OFFSET, COLUMN_STATE, COLUMN_VIDEO_ID,
+            COLUMN_ATTEMPTS, COLUMN_PRIORITY, COLUMN_FINGERPRINT, COLUMN_PROCESSING_SINCE};
+    private static final String UNFINISHED = COLUMN_STATE + " IN ('" + State.QUEUED + "', '"
+            + State.UPLOADING + "', '" + State.PROCESSING + "')";
+    private static final String STANDS_IN_FOR_CONTENT = standsInForContent();
+    private static UploadJournal mInstance;
+
+    private UploadJournal(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    public static synchronized UploadJournal getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new UploadJournal(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    private static String standsInForContent() {
+        StringBuilder states = new StringBuilder();
+        for (State state : State.values()) {
+            if (state.standsInForContent()) {
+                states.append(states.length() == 0 ? "'" : ", '").append(state).append('\'');
+            }
+        }
+        return COLUMN_STATE + " IN (" + states + ")";
+    }
+
+    private static Entry readEntry(Cursor cursor) {
+        return new Entry(cursor.getLong(0), Uri.parse(cursor.getString(1)), cursor.getString(2),
+                cursor.getLong(3), cursor.getString(4), cursor.getLong(5),
+                State.valueOf(cursor.getString(6)), cursor.getString(7), cursor.getInt(8),
+                cursor.getInt(9), cursor.getString(10), cursor.getLong(11));
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_UPLOADS + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_URI + " TEXT NOT NULL, "
+                + COLUMN_ACCOUNT + " TEXT, "
+                + COLUMN_SIZE + " INTEGER NOT NULL DEFAULT -1, "
+                + COLUMN_SESSION_URL + " TEXT, "
+                + COLUMN_COMMITTED_OFFSET + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_STATE + " TEXT NOT NULL, "
+                + COLUMN_VIDEO_ID + " TEXT, "
+                + COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_CREATED + " INTEGER NOT NULL, "
+                + COLUMN_PRIORITY + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_FINGERPRINT + " TEXT, "
+                + COLUMN_PROCESSING_SINCE + " INTEGER NOT NULL DEFAULT 0)");
+        createFingerprintIndex(db);
+    }
+
+    private static void createFingerprintIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_FINGERPRINT + " ON " + TABLE_UPLOADS + " ("
+                + COLUMN_FINGERPRINT + ", " + COLUMN_ACCOUNT + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_UPLOADS + " ADD COLUMN " + COLUMN_PRIORITY
+                    + " INTEGER NOT NULL DEFAULT 0");
+        }
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + TABLE_UPLOADS + " ADD COLUMN " + COLUMN_FINGERPRINT
+                    + " TEXT");
+            createFingerprintIndex(db);
+        }
+        if (oldVersion < 4) {
+            db.execSQL("ALTER TABLE " + TABLE_UPLOADS + " ADD COLUMN " + COLUMN_PROCESSING_SINCE
+                    + " INTEGER NOT NULL DEFAULT 0");
+            // When processing started wasn't recorded, their processing timeout starts now.
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_PROCESSING_SINCE, System.currentTimeMillis());
+            db.update(TABLE_UPLOADS, values, COLUMN_STATE + " = ?",
+                    new String[]{State.PROCESSING.name()});
+        }
+    }
+
+    /**
+     * Records a new upload, or returns the unfinished one already recorded for the same file and
+     * account, such as when the service restarts and the original intent is redelivered.
+     */
+    public synchronized long add(Uri uri, String account, int priority) {
+        SQLiteDatabase db = getWritableDatabase();
+        Cursor cursor = db.query(TABLE_UPLOADS, new String[]{COLUMN_ID},
+                COLUMN_URI + " = ? AND " + COLUMN_ACCOUNT + " = ? AND " + UNFINISHED,
+                new String[]{uri.toString(), account}, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_URI, uri.toString());
+        values.put(COLUMN_ACCOUNT, account);
+        values.put(COLUMN_STATE, State.QUEUED.name());
+        values.put(COLUMN_CREATED, System.currentTimeMillis());
+        values.put(COLUMN_PRIORITY, priority);
+        return db.insert(TABLE_UPLOADS, null, values);
+    }
+
+    /**
+     * @return the upload with the given ID, or null if there is none
+     */
+    public Entry get(long id) {
+        Cursor cursor = getReadableDatabase().query(TABLE_UPLOADS, ALL_COLUMNS,
+                COLUMN_ID + " = ?", new String[]{Long.toString(id)}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? readEntry(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return uploads that are queued, in flight or waiting for processing, oldest first
+     */
+    public List<Entry> getUnfinished() {
+        Cursor cursor = getReadableDatabase().query(TABLE_UPLOADS, ALL_COLUMNS, UNFINISHED, null,
+                null, null, COLUMN_CREATED);
+        try {
+            List<Entry> entries = new ArrayList<Entry>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                entries.add(readEntry(cursor));
+            }
+            return entries;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Records the content fingerprint of an upload, see {@link #findEarlier}.
+     *
+     * @param fingerprint null if the upload no longer stands in for its content
+     */
+    public void setFingerprint(long id, String fingerprint) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_FINGERPRINT, fingerprint);
+        update(id, values);
+    }
+
+    /**
+     * Looks for an earlier upload of the same content to the same account. Only the later of two
+     * uploads finds the other, so two copies uploaded at the same time don't both give way.
+     *
+     * @return the earliest such upload that still {@link State#standsInForContent stands in} for
+     * it, or null if there is none
+     */
+    public Entry findEarlier(Entry entry) {
+        if (entry.fingerprint == null) {
+            return null;
+        }
+        Cursor cursor = getReadableDatabase().query(TABLE_UPLOADS, ALL_COLUMNS,
+                COLUMN_FINGERPRINT + " = ? AND " + COLUMN_ACCOUNT + " = ? AND " + COLUMN_ID
+                        + " < ? AND " + STANDS_IN_FOR_CONTENT,
+                new String[]{entry.fingerprint, entry.account, Long.toString(entry.id)}, null,
+                null, COLUMN_ID, "1");
+        try {
+            return cursor.moveToFirst() ? readEntry(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Records that the upload was dropped for repeating an earlier one.
+     *
+     * @param videoId the earlier upload's video, null if it is still being uploaded
+     */
+    public void setDuplicate(long id, String videoId) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_VIDEO_ID, videoId);
+        values.put(COLUMN_SESSION_URL, (String) null);
+        values.put(COLUMN_STATE, State.DUPLICATE.name());
+        update(id, values);
+    }
+
+    public void setSize(long id, long size) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SIZE, size);
+        update(id, values);
+    }
+
+    /**
+     * Records a newly initiated session. Any previously committed bytes belong to an older session.
+     */
+    public void setSessionUrl(long id, String sessionUrl) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SESSION_URL, sessionUrl);
+        values.put(COLUMN_COMMITTED_OFFSET, 0);
+        values.put(COLUMN_STATE, State.UPLOADING.name());
+        update(id, values);
+    }
+
+    /**
+     * Forgets an expired session, the next attempt starts a new one from byte zero.
+     */
+    public void clearSession(long id) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SESSION_URL, (String) null);
+        values.put(COLUMN_COMMITTED_OFFSET, 0);
+        update(id, values);
+    }
+
+    public void setCommittedOffset(long id, long offset) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_COMMITTED_OFFSET, offset);
+        update(id, values);
+    }
+
+    /**
+     * Records that all bytes were accepted and the video is now being processed.
+     *
+     * @param processingSince wall clock time processing started at, in ms
+     */
+    public void setVideoId(long id, String videoId, long processingSince) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_VIDEO_ID, videoId);
+        values.put(COLUMN_PROCESSING_SINCE, processingSince);
+        values.put(COLUMN_SESSION_URL, (String) null);
+        values.put(COLUMN_STATE, State.PROCESSING.name());
+        update(id, values);
+    }
+
+    public void setState(long id, State state) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_STATE, state.name());
+        update(id, values);
+    }
+
+    /**
+     * @return the number of attempts made so far, including this one
+     */
+    public synchronized int incrementAttempts(long id) {
+        getWritableDatabase().execSQL("UPDATE " + TABLE_UPLOADS + " SET " + COLUMN_ATTEMPTS + " = "
+                + COLUMN_ATTEMPTS + " + 1 WHERE " + COLUMN_ID + " = ?", new Object[]{id});
+        Entry entry = get(id);
+        return entry == null ? 0 : entry.attempts;
+    }
+
+    private void update(long id, ContentValues values) {
+        getWritableDatabase().update(TABLE_UPLOADS, values, COLUMN_ID + " = ?",
+                new String[]{Long.toString(id)});
+    }
+
+    public enum State {
+        QUEUED, UPLOADING, PROCESSING, COMPLETE,
+        /**
+         * the upload gave up, or YouTube failed or refused to process the video
+         */
+        FAILED,
+        /**
+         * the same content was uploaded to the same account before
+         */
+        DUPLICATE;
+
+        /**
+         * @return whether later uploads of the same content are dropped in favour of this one
+         */
+        public boolean standsInForContent() {
+            return this != FAILED && this != DUPLICATE;
+        }
+    }
+
+    /**
+     * Snapshot of one journaled upload.
+     */
+    public static class Entry {
+        public final long id;
+        public final Uri uri;
+        public final String account;
+        /**
+         * file size in bytes, or -1 until the file has been opened
+         */
+        public final long size;
+        public final String sessionUrl;
+        public final long committedOffset;
+        public final State state;
+        public final String videoId;
+        public final int attempts;
+        public final int priority;
+        /**
+         * see {@link ContentFingerprinter}, null until computed
+         */
+        public final String fingerprint;
+        /**
+         * wall clock time the video started processing at in ms, 0 until it is uploaded
+         */
+        public final long processingSince;
+
+        Entry(long id, Uri uri, String account, long size, String sessionUrl,
+              long committedOffset, State state, String videoId, int attempts, int priority,
+              String fingerprint, long processingSince) {
+            this.id = id;
+            this.uri = uri;
+            this.account = account;
+            this.size = size;
+            this.sessionUrl = sessionUrl;
+            this.committedOffset = committedOffset;
+            this.state = state;
+            this.videoId = videoId;
+            this.attempts = attempts;
+            this.priority = priority;
+            this.fingerprint = fingerprint;
+            this.processingSince = processingSince;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide counters and histograms of the upload pipeline. Recording only updates atomics, so
+ * it allocates nothing and can be done on every chunk. The numbers can be dumped as JSON, e.g. to
+ * compare builds or network conditions.
+ */
+public class UploadMetrics {
+    private static final long NANOS_PER_MS = 1000000;
+    private static final long NANOS_PER_US = 1000;
+    private static final UploadMetrics mInstance = new UploadMetrics();
+
+    private final AtomicLongArray mCounters = new AtomicLongArray(Counter.values().length);
+    private final Histogram[] mHistograms = new Histogram[Stat.values().length];
+
+    private UploadMetrics() {
+        for (int i = 0; i < mHistograms.length; i++) {
+            mHistograms[i] = new Histogram();
+        }
+    }
+
+    public static UploadMetrics getInstance() {
+        return mInstance;
+    }
+
+    /**
+     * @return the start time to pass to {@link #stopTimer}
+     */
+    public static long startTimer() {
+        return System.nanoTime();
+    }
+
+    public void increment(Counter counter) {
+        mCounters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long delta) {
+        mCounters.addAndGet(counter.ordinal(), delta);
+    }
+
+    public long get(Counter counter) {
+        return mCounters.get(counter.ordinal());
+    }
+
+    public void record(Stat stat, long value) {
+        mHistograms[stat.ordinal()].record(value);
+    }
+
+    /**
+     * Records the time since {@link #startTimer()} in the unit of the given stat.
+     */
+    public void stopTimer(Stat stat, long startNanos) {
+        record(stat, (System.nanoTime() - startNanos) / stat.nanosPerUnit);
+    }
+
+    public Histogram getHistogram(Stat stat) {
+        return mHistograms[stat.ordinal()];
+    }
+
+    public JSONObject toJson() {
+        try {
+            JSONObject counters = new JSONObject();
+            for (Counter counter : Counter.values()) {
+                counters.put(counter.name().toLowerCase(), get(counter));
+            }
+            JSONObject histograms = new JSONObject();
+            for (Stat stat : Stat.values()) {
+                Histogram histogram = getHistogram(stat);
+                histograms.put(stat.name().toLowerCase(), new JSONObject()
+                        .put("count", histogram.count())
+                        .put("sum", histogram.sum())
+                        .put("min", histogram.min())
+                        .put("max", histogram.max())
+                        .put("p50", histogram.percentile(50))
+                        .put("p90", histogram.percentile(90))
+                        .put("p99", histogram.percentile(99)));
+            }
+            return new JSONObject()
+                    .put("timestamp", System.currentTimeMillis())
+                    .put("counters", counters)
+                    .put("histograms", histograms);
+        } catch (JSONException e) {
+            // Only thrown for non-finite numbers, all of ours are longs.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the current numbers to the given file as JSON, replacing it.
+     */
+    public void dump(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(toJson().toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    public enum Counter {
+        UPLOADS_STARTED, UPLOADS_SUCCEEDED, UPLOADS_FAILED, RETRIES, SESSIONS_RESUMED, CHUNKS,
+        BYTES_UPLOADED, TRANSCODES,
+        /**
+         * uploads dropped because the same content was uploaded before
+         */
+        UPLOADS_DEDUPLICATED,
+        /**
+         * difference between the original and the transcoded sizes
+         */
+        TRANSCODE_BYTES_SAVED
+    }
+
+    public enum Stat {
+        FILE_OPEN_MS(NANOS_PER_MS),
+        /**
+         * from requesting the notification thumbnail until it is decoded
+         */
+        THUMBNAIL_MS(NANOS_PER_MS),
+        INITIATE_MS(NANOS_PER_MS),
+        CHUNK_MS(NANOS_PER_MS),
+        CHUNK_BYTES_PER_SECOND(1),
+        /**
+         * from the end of an upload until YouTube has finished processing it
+         */
+        PROCESSING_WAIT_MS(NANOS_PER_MS),
+        NOTIFICATION_US(NANOS_PER_US),
+        FINGERPRINT_MS(NANOS_PER_MS),
+        TRANSCODE_MS(NANOS_PER_MS),
+        /**
+         * transcoded size in percent of the original size
+         */
+        TRANSCODE_RATIO_PERCENT(1),
+        /**
+         * upload time saved by the smaller file less the time spent transcoding, 0 if it cost time
+         */
+        TRANSCODE_SAVED_MS(NANOS_PER_MS);
+
+        final long nanosPerUnit;
+
+        Stat(long nanosPerUnit) {
+            this.nanosPerUnit = nanosPerUnit;
+        }
+    }
+
+    /**
+     * Histogram of non-negative values with one bucket per power of two.
+     */
+    public static class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong mMax = new AtomicLong(Long.MIN_VALUE);
+
+        void record(long value) {
+            value = Math.max(0, value);
+            // Bucket i holds the values i bits long, 0 in bucket 0.
+            mBuckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+            mCount.incrementAndGet();
+            mSum.addAndGet(value);
+            long min;
+            while (value < (min = mMin.get()) && !mMin.compareAndSet(min, value)) {
+                // lost a race, try again
+            }
+            long max;
+            while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+                // lost a race, try again
+            }
+        }
+
+        public long count() {
+            return mCount.get();
+        }
+
+        public long sum() {
+            return mSum.get();
+        }
+
+        public long min() {
+            return count() == 0 ? 0 : mMin.get();
+        }
+
+        public long max() {
+            return count() == 0 ? 0 : mMax.get();
+        }
+
+        /**
+         * @return upper bound of the bucket holding the given percentile, capped by the maximum
+         */
+        public long percentile(int percent) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (count * percent + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(max(), (1L << i) - 1);
+                }
+            }
+            return max();
+        }
+    }
+}
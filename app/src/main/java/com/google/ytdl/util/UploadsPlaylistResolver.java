@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.ChannelListResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the uploads playlist of each account's channel, so listing uploads doesn't start with
+ * a channels.list round trip. The ID hardly ever changes, it is looked up again after a week or
+ * when the account is switched.
+ */
+public class UploadsPlaylistResolver {
+    private static final String PREFS_NAME = "uploads_playlists";
+    private static final String KEY_RESOLVED_AT = "_resolved_at";
+    private static final long TTL_MS = TimeUnit.DAYS.toMillis(7);
+    private static UploadsPlaylistResolver mInstance;
+
+    private final SharedPreferences mPrefs;
+
+    private UploadsPlaylistResolver(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized UploadsPlaylistResolver getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new UploadsPlaylistResolver(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * @return the account's uploads playlist ID, fetched with the given client if not known yet
+     */
+    public String resolve(YouTube youtube, String account) throws IOException {
+        String playlistId = mPrefs.getString(account, null);
+        long resolvedAt = mPrefs.getLong(account + KEY_RESOLVED_AT, 0);
+        if (playlistId != null && System.currentTimeMillis() - resolvedAt < TTL_MS) {
+            return playlistId;
+        }
+
+        // See https://developers.google.com/youtube/v3/docs/channels/list
+        ChannelListResponse clr = youtube.channels()
+                .list("contentDetails").setMine(true)
+                .setFields(ApiFields.CHANNEL_UPLOADS_PLAYLIST).execute();
+        playlistId = clr.getItems().get(0)
+                .getContentDetails().getRelatedPlaylists()
+                .getUploads();
+        mPrefs.edit().putString(account, playlistId)
+                .putLong(account + KEY_RESOLVED_AT, System.currentTimeMillis())
+                .apply();
+        return playlistId;
+    }
+
+    /**
+     * Forgets the account's playlist ID, the next {@link #resolve} looks it up again.
+     */
+    public void invalidate(String account) {
+        mPrefs.edit().remove(account).remove(account + KEY_RESOLVED_AT).apply();
+    }
+}
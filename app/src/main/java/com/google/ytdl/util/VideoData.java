@@ -14,49 +14,95 @@
 
 package com.google.ytdl.util;
 
-import com.google.api.services.youtube.model.Video;
-import com.google.api.services.youtube.model.VideoSnippet;
-
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * @author Ibrahim Ulukaya <ulukaya@google.com>
  *         <p/>
- *         Helper class to handle YouTube videos.
+ *         Immutable record of a YouTube video holding only what the app shows. Privacy statuses and
+ *         tags repeat across videos and are interned.
  */
 public class VideoData {
-    private Video mVideo;
+    public static final String PRIVACY_PUBLIC = "public";
+    private static final String[] NO_TAGS = new String[0];
+
+    private final String mId;
+    private final String mEtag;
+    private final String mTitle;
+    private final String mPrivacyStatus;
+    private final long mPublishedAt;
+    private final String[] mTags;
 
-    public Video getVideo() {
-        return mVideo;
+    /**
+     * @param publishedAt publishing time in ms since the epoch, or 0 if unknown
+     * @param tags        the video's tags, or null if it has none
+     */
+    public VideoData(String id, String etag, String title, String privacyStatus, long publishedAt,
+                     String[] tags) {
+        mId = id;
+        mEtag = etag;
+        mTitle = title == null ? "" : title;
+        mPrivacyStatus = privacyStatus == null ? null : privacyStatus.intern();
+        mPublishedAt = publishedAt;
+        if (tags == null || tags.length == 0) {
+            mTags = NO_TAGS;
+        } else {
+            mTags = new String[tags.length];
+            for (int i = 0; i < tags.length; i++) {
+                mTags[i] = tags[i].intern();
+            }
+        }
     }
 
-    public void setVideo(Video video) {
-        mVideo = video;
+    /**
+     * Medium thumbnails fill the grid cells without upscaling, and the upload notification asks for
+     * the same URL so both share one download.
+     */
+    public static String getThumbUri(String youTubeId) {
+        return "https://i.ytimg.com/vi/" + youTubeId + "/mqdefault.jpg";
     }
 
     public String getYouTubeId() {
-        return mVideo.getId();
+        return mId;
+    }
+
+    public String getEtag() {
+        return mEtag;
     }
 
     public String getTitle() {
-        return mVideo.getSnippet().getTitle();
+        return mTitle;
+    }
+
+    public String getPrivacyStatus() {
+        return mPrivacyStatus;
+    }
+
+    public boolean isPublic() {
+        return PRIVACY_PUBLIC.equals(mPrivacyStatus);
+    }
+
+    public long getPublishedAt() {
+        return mPublishedAt;
+    }
+
+    public List<String> getTags() {
+        return Collections.unmodifiableList(Arrays.asList(mTags));
     }
 
-    public VideoSnippet addTags(Collection<? extends String> tags) {
-        VideoSnippet mSnippet = mVideo.getSnippet();
-        List<String> mTags = mSnippet.getTags();
-        if (mTags == null) {
-            mTags = new ArrayList<String>(2);
+    public boolean hasTag(String tag) {
+        for (String t : mTags) {
+            if (t.equals(tag)) {
+                return true;
+            }
         }
-        mTags.addAll(tags);
-        return mSnippet;
+        return false;
     }
 
     public String getThumbUri() {
-        return mVideo.getSnippet().getThumbnails().getDefault().getUrl();
+        return getThumbUri(mId);
     }
 
     public String getWatchUri() {
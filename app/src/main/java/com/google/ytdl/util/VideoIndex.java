@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.support.v4.util.LruCache;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory index of the loaded videos, kept in locale-aware title order. Videos are inserted and
+ * removed at their place as pages arrive, so the list is never sorted as a whole, and
+ * {@link #query(Query)} only has to filter it.
+ * <p/>
+ * Not thread-safe, it is meant to be used from the main thread.
+ */
+public class VideoIndex {
+    /**
+     * titles whose collation keys are kept, also across {@link #clear()}
+     */
+    private static final int KEY_CACHE_SIZE = 1024;
+    private static final Comparator<Entry> TITLE_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry entry, Entry entry2) {
+            int result = entry.titleKey.compareTo(entry2.titleKey);
+            // Equal titles are ordered by ID, so every entry has one exact position.
+            return result != 0 ? result
+                    : entry.video.getYouTubeId().compareTo(entry2.video.getYouTubeId());
+        }
+    };
+
+    private final Collator mCollator;
+    private final LruCache<String, CollationKey> mTitleKeys =
+            new LruCache<String, CollationKey>(KEY_CACHE_SIZE);
+    private final Map<String, Entry> mById = new HashMap<String, Entry>();
+    private final List<Entry> mByTitle = new ArrayList<Entry>();
+
+    public VideoIndex(Locale locale) {
+        mCollator = Collator.getInstance(locale);
+    }
+
+    /**
+     * Adds or replaces the changed videos and drops the removed ones.
+     *
+     * @return whether the index changed
+     */
+    public boolean update(Collection<VideoData> changed, Collection<String> removedIds) {
+        boolean updated = false;
+        for (String id : removedIds) {
+            updated |= remove(id);
+        }
+        for (VideoData video : changed) {
+            remove(video.getYouTubeId());
+            Entry entry = new Entry(video, getTitleKey(video.getTitle()));
+            int position = Collections.binarySearch(mByTitle, entry, TITLE_ORDER);
+            mByTitle.add(position < 0 ? -position - 1 : position, entry);
+            mById.put(video.getYouTubeId(), entry);
+            updated = true;
+        }
+        return updated;
+    }
+
+    public void clear() {
+        mById.clear();
+        mByTitle.clear();
+    }
+
+    public int size() {
+        return mByTitle.size();
+    }
+
+    /**
+     * @return the videos matching the query, in title order
+     */
+    public List<VideoData> query(Query query) {
+        List<VideoData> result = new ArrayList<VideoData>();
+        for (Entry entry : mByTitle) {
+            if (query.matches(entry.video)) {
+                result.add(entry.video);
+            }
+        }
+        return result;
+    }
+
+    private boolean remove(String id) {
+        Entry entry = mById.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        mByTitle.remove(Collections.binarySearch(mByTitle, entry, TITLE_ORDER));
+        return true;
+    }
+
+    private CollationKey getTitleKey(String title) {
+        CollationKey key = mTitleKeys.get(title);
+        if (key == null) {
+            key = mCollator.getCollationKey(title);
+            mTitleKeys.put(title, key);
+        }
+        return key;
+    }
+
+    private static class Entry {
+        final VideoData video;
+        final CollationKey titleKey;
+
+        Entry(VideoData video, CollationKey titleKey) {
+            this.video = video;
+            this.titleKey = titleKey;
+        }
+    }
+
+    /**
+     * Filters of a {@link #query(Query)}, unset ones match every video.
+     */
+    public static class Query {
+        private String mPrivacyStatus;
+        private long mPublishedAfter = Long.MIN_VALUE;
+        private long mPublishedBefore = Long.MAX_VALUE;
+        private String mTag;
+
+        public Query setPrivacyStatus(String privacyStatus) {
+            mPrivacyStatus = privacyStatus;
+            return this;
+        }
+
+        /**
+         * @param publishedAfter earliest publishing time in ms since the epoch, inclusive
+         */
+        public Query setPublishedAfter(long publishedAfter) {
+            mPublishedAfter = publishedAfter;
+            return this;
+        }
+
+        /**
+         * @param publishedBefore latest publishing time in ms since the epoch, exclusive
+         */
+        public Query setPublishedBefore(long publishedBefore) {
+            mPublishedBefore = publishedBefore;
+            return this;
+        }
+
+        public Query setTag(String tag) {
+            mTag = tag;
+            return this;
+        }
+
+        boolean matches(VideoData video) {
+            return (mPrivacyStatus == null || mPrivacyStatus.equals(video.getPrivacyStatus()))
+                    && video.getPublishedAt() >= mPublishedAfter
+                    && video.getPublishedAt() < mPublishedBefore
+                    && (mTag == null || video.hasTag(mTag));
+        }
+    }
+}
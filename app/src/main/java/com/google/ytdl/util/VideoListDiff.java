@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two versions of a video list by video ID and ETag, so a list view only redraws and
+ * rebinds what actually changed.
+ */
+public class VideoListDiff {
+    private VideoListDiff() {
+    }
+
+    /**
+     * @return whether both records describe the same version of the same video
+     */
+    public static boolean isSameContent(VideoData video, VideoData video2) {
+        if (video == video2) {
+            return true;
+        }
+        if (video == null || video2 == null
+                || !video.getYouTubeId().equals(video2.getYouTubeId())) {
+            return false;
+        }
+        return video.getEtag() == null ? video2.getEtag() == null
+                : video.getEtag().equals(video2.getEtag());
+    }
+
+    public static Result calculate(List<VideoData> oldVideos, List<VideoData> newVideos) {
+        Map<String, VideoData> old = new HashMap<String, VideoData>(oldVideos.size());
+        for (VideoData video : oldVideos) {
+            old.put(video.getYouTubeId(), video);
+        }
+        Result result = new Result();
+        List<String> kept = new ArrayList<String>(newVideos.size());
+        for (VideoData video : newVideos) {
+            VideoData oldVideo = old.remove(video.getYouTubeId());
+            if (oldVideo == null) {
+                result.inserted.add(video.getYouTubeId());
+                continue;
+            }
+            if (!isSameContent(oldVideo, video)) {
+                result.changed.add(video.getYouTubeId());
+            }
+            kept.add(video.getYouTubeId());
+        }
+        result.removed.addAll(old.keySet());
+
+        // The videos in both lists must also keep their relative order.
+        int i = 0;
+        for (VideoData video : oldVideos) {
+            if (old.containsKey(video.getYouTubeId())) {
+                continue;
+            }
+            if (!kept.get(i++).equals(video.getYouTubeId())) {
+                result.reordered = true;
+                break;
+            }
+        }
+        return result;
+    }
+
+    public static class Result {
+        public final List<String> inserted = new ArrayList<String>();
+        public final List<String> removed = new ArrayList<String>();
+        /**
+         * videos in both lists whose ETag changed
+         */
+        public final List<String> changed = new ArrayList<String>();
+        public boolean reordered;
+
+        public boolean hasChanges() {
+            return reordered || !inserted.isEmpty() || !removed.isEmpty() || !changed.isEmpty();
+        }
+    }
+}
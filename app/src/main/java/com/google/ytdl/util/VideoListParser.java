@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonParser;
+import com.google.api.client.json.JsonToken;
+import com.google.api.client.util.Charsets;
+import com.google.api.client.util.DateTime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a videos.list response token by token into {@link VideoData} records, without building the
+ * {@link com.google.api.services.youtube.model.Video} object graph. Fields not listed in
+ * {@link ApiFields#GRID_VIDEOS} are skipped.
+ */
+public class VideoListParser {
+    private final JsonFactory mJsonFactory;
+
+    public VideoListParser(JsonFactory jsonFactory) {
+        mJsonFactory = jsonFactory;
+    }
+
+    /**
+     * Parses the response and closes the stream.
+     */
+    public Result parse(InputStream in) throws IOException {
+        JsonParser parser = mJsonFactory.createJsonParser(in, Charsets.UTF_8);
+        try {
+            String etag = null;
+            List<VideoData> videos = new ArrayList<VideoData>();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a videos.list response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("etag".equals(name)) {
+                    etag = parser.getText();
+                } else if ("items".equals(name) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        videos.add(parseVideo(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new Result(etag, videos);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Reads one item, the parser is on its START_OBJECT and is left on its END_OBJECT.
+     */
+    private static VideoData parseVideo(JsonParser parser) throws IOException {
+        String id = null;
+        String etag = null;
+        String title = null;
+        String privacyStatus = null;
+        long publishedAt = 0;
+        String[] tags = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("id".equals(name)) {
+                id = parser.getText();
+            } else if ("etag".equals(name)) {
+                etag = parser.getText();
+            } else if ("snippet".equals(name) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String snippetName = parser.getCurrentName();
+                    JsonToken snippetValue = parser.nextToken();
+                    if ("title".equals(snippetName)) {
+                        title = parser.getText();
+                    } else if ("publishedAt".equals(snippetName)) {
+                        publishedAt = DateTime.parseRfc3339(parser.getText()).getValue();
+                    } else if ("tags".equals(snippetName) && snippetValue == JsonToken.START_ARRAY) {
+                        List<String> tagList = new ArrayList<String>();
+                        while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                            tagList.add(parser.getText());
+                        }
+                        tags = tagList.toArray(new String[tagList.size()]);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if ("status".equals(name) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String statusName = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("privacyStatus".equals(statusName)) {
+                        privacyStatus = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new VideoData(id, etag, title, privacyStatus, publishedAt, tags);
+    }
+
+    /**
+     * The videos of a response along with its ETag.
+     */
+    public static class Result {
+        public final String etag;
+        public final List<VideoData> videos;
+
+        Result(String etag, List<VideoData> videos) {
+            this.etag = etag;
+            this.videos = videos;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-device copy of the uploads list, so the grid can be drawn before any request is made. Videos
+ * are stored with their ETags, and every playlist page with the ETags of its playlistItems.list and
+ * videos.list responses, so the list can be revalidated with conditional requests.
+ */
+public class VideoStore extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "videos.db";
+    private static final int DATABASE_VERSION = 3;
+    private static final String TABLE_VIDEOS = "videos";
+    private static final String TABLE_PAGES = "pages";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_ACCOUNT = "account";
+    private static final String COLUMN_ETAG = "etag";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_PRIVACY_STATUS = "privacy_status";
+    private static final String COLUMN_PUBLISHED_AT = "published_at";
+    private static final String COLUMN_TAGS = "tags";
+    /**
+     * separates the tags of a video, they can't contain line breaks
+     */
+    private static final String TAG_SEPARATOR = "\n";
+    private static final String COLUMN_PAGE_TOKEN = "page_token";
+    private static final String COLUMN_NEXT_PAGE_TOKEN = "next_page_token";
+    private static final String COLUMN_VIDEO_IDS = "video_ids";
+    private static final String COLUMN_VIDEOS_ETAG = "videos_etag";
+    /**
+     * stands in for the missing token of the first page
+     */
+    private static final String FIRST_PAGE = "";
+    private static VideoStore mInstance;
+
+    private VideoStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    public static synchronized VideoStore getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new VideoStore(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_VIDEOS + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_ACCOUNT + " TEXT NOT NULL, "
+                + COLUMN_ETAG + " TEXT, "
+                + COLUMN_TITLE + " TEXT, "
+                + COLUMN_PRIVACY_STATUS + " TEXT, "
+                + COLUMN_PUBLISHED_AT + " INTEGER, "
+                + COLUMN_TAGS + " TEXT)");
+        db.execSQL("CREATE INDEX videos_account ON " + TABLE_VIDEOS + " (" + COLUMN_ACCOUNT + ")");
+        db.execSQL("CREATE TABLE " + TABLE_PAGES + " ("
+                + COLUMN_ACCOUNT + " TEXT NOT NULL, "
+                + COLUMN_PAGE_TOKEN + " TEXT NOT NULL, "
+                + COLUMN_ETAG + " TEXT, "
+                + COLUMN_NEXT_PAGE_TOKEN + " TEXT, "
+                + COLUMN_VIDEO_IDS + " TEXT NOT NULL, "
+                + COLUMN_VIDEOS_ETAG + " TEXT, "
+                + "PRIMARY KEY (" + COLUMN_ACCOUNT + ", " + COLUMN_PAGE_TOKEN + "))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only a cache of the uploads list, it is loaded again from scratch.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_VIDEOS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PAGES);
+        onCreate(db);
+    }
+
+    /**
+     * @return every stored video of the account, in no particular order
+     */
+    public List<VideoData> getVideos(String account) {
+        Cursor cursor = getReadableDatabase().query(TABLE_VIDEOS,
+                new String[]{COLUMN_ID, COLUMN_ETAG, COLUMN_TITLE, COLUMN_PRIVACY_STATUS,
+                        COLUMN_PUBLISHED_AT, COLUMN_TAGS},
+                COLUMN_ACCOUNT + " = ?", new String[]{account}, null, null, null);
+        try {
+            List<VideoData> videos = new ArrayList<VideoData>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                String tags = cursor.getString(5);
+                videos.add(new VideoData(cursor.getString(0), cursor.getString(1),
+                        cursor.getString(2), cursor.getString(3), cursor.getLong(4),
+                        TextUtils.isEmpty(tags) ? null : tags.split(TAG_SEPARATOR)));
+            }
+            return videos;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return ETags of the stored videos among the given IDs, by video ID
+     */
+    public Map<String, String> getEtags(Collection<String> videoIds) {
+        Map<String, String> etags = new HashMap<String, String>();
+        if (videoIds.isEmpty()) {
+            return etags;
+        }
+        String[] args = videoIds.toArray(new String[videoIds.size()]);
+        String placeholders = TextUtils.join(",", Collections.nCopies(args.length, "?"));
+        Cursor cursor = getReadableDatabase().query(TABLE_VIDEOS,
+                new String[]{COLUMN_ID, COLUMN_ETAG}, COLUMN_ID + " IN (" + placeholders + ")",
+                args, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                etags.put(cursor.getString(0), cursor.getString(1));
+            }
+            return etags;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Stores changed videos and forgets the ones no longer shown, in one transaction.
+     */
+    public void update(String account, Collection<VideoData> changed,
+                       Collection<String> removedIds) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (VideoData video : changed) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_ID, video.getYouTubeId());
+                values.put(COLUMN_ACCOUNT, account);
+                values.put(COLUMN_ETAG, video.getEtag());
+                values.put(COLUMN_TITLE, video.getTitle());
+                values.put(COLUMN_PRIVACY_STATUS, video.getPrivacyStatus());
+                values.put(COLUMN_PUBLISHED_AT, video.getPublishedAt());
+                values.put(COLUMN_TAGS, TextUtils.join(TAG_SEPARATOR, video.getTags()));
+                db.insertWithOnConflict(TABLE_VIDEOS, null, values,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            for (String id : removedIds) {
+                db.delete(TABLE_VIDEOS, COLUMN_ID + " = ?", new String[]{id});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Deletes the account's videos that are not among the given ones, e.g. after a full pass over
+     * the uploads playlist.
+     *
+     * @return IDs of the deleted videos
+     */
+    public List<String> retain(String account, Collection<String> videoIds) {
+        List<String> removed = new ArrayList<String>();
+        Cursor cursor = getReadableDatabase().query(TABLE_VIDEOS, new String[]{COLUMN_ID},
+                COLUMN_ACCOUNT + " = ?", new String[]{account}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                if (!videoIds.contains(cursor.getString(0))) {
+                    removed.add(cursor.getString(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        update(account, new ArrayList<VideoData>(), removed);
+        return removed;
+    }
+
+    /**
+     * @param pageToken token of the page, or null for the first one
+     * @return the stored page, or null if it was never loaded
+     */
+    public Page getPage(String account, String pageToken) {
+        Cursor cursor = getReadableDatabase().query(TABLE_PAGES,
+                new String[]{COLUMN_ETAG, COLUMN_NEXT_PAGE_TOKEN, COLUMN_VIDEO_IDS, COLUMN_VIDEOS_ETAG},
+                COLUMN_ACCOUNT + " = ? AND " + COLUMN_PAGE_TOKEN + " = ?",
+                new String[]{account, pageToken == null ? FIRST_PAGE : pageToken},
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            String videoIds = cursor.getString(2);
+            return new Page(pageToken, cursor.getString(0), cursor.getString(1),
+                    videoIds.isEmpty() ? new ArrayList<String>()
+                            : Arrays.asList(TextUtils.split(videoIds, ",")),
+                    cursor.getString(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void putPage(String account, Page page) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ACCOUNT, account);
+        values.put(COLUMN_PAGE_TOKEN, page.pageToken == null ? FIRST_PAGE : page.pageToken);
+        values.put(COLUMN_ETAG, page.etag);
+        values.put(COLUMN_NEXT_PAGE_TOKEN, page.nextPageToken);
+        values.put(COLUMN_VIDEO_IDS, TextUtils.join(",", page.videoIds));
+        values.put(COLUMN_VIDEOS_ETAG, page.videosEtag);
+        getWritableDatabase().insertWithOnConflict(TABLE_PAGES, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * One page of the uploads playlist as it was last loaded.
+     */
+    public static class Page {
+        public final String pageToken;
+        /**
+         * ETag of the playlistItems.list response
+         */
+        public final String etag;
+        public final String nextPageToken;
+        public final List<String> videoIds;
+        /**
+         * ETag of the videos.list response for {@link #videoIds}
+         */
+        public final String videosEtag;
+
+        public Page(String pageToken, String etag, String nextPageToken, List<String> videoIds,
+                    String videosEtag) {
+            this.pageToken = pageToken;
+            this.etag = etag;
+            this.nextPageToken = nextPageToken;
+            this.videoIds = videoIds;
+            this.videosEtag = videosEtag;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaMuxer;
+import android.net.Uri;
+import android.os.Build;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Re-encodes a video to H.264 at a lower resolution and bitrate before it is uploaded. The decoder
+ * renders straight into the encoder's input surface, which scales the frames, so no frame passes
+ * through app memory. The audio track is copied as it is.
+ * <p/>
+ * Needs Jelly Bean MR2 for {@link MediaMuxer} and encoder input surfaces.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class VideoTranscoder {
+    private static final String TAG = "VideoTranscoder";
+    private static final String OUTPUT_MIME_TYPE = "video/avc";
+    private static final long TIMEOUT_US = 10000;
+    /**
+     * encoders want dimensions in whole macroblocks
+     */
+    private static final int MACROBLOCK_SIZE = 16;
+    private static final int DEFAULT_AUDIO_BUFFER_SIZE = 256 * 1024;
+
+    private final int mMaxShortSide;
+    private final int mBitRate;
+    private final int mFrameRate;
+    private final int mIFrameInterval;
+
+    /**
+     * @param maxShortSide   largest height of a landscape video, or width of a portrait one
+     * @param bitRate        target video bitrate in bits per second
+     * @param frameRate      frame rate announced to the encoder
+     * @param iFrameInterval seconds between key frames
+     */
+    public VideoTranscoder(int maxShortSide, int bitRate, int frameRate, int iFrameInterval) {
+        mMaxShortSide = maxShortSide;
+        mBitRate = bitRate;
+        mFrameRate = frameRate;
+        mIFrameInterval = iFrameInterval;
+    }
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    private static int roundToMacroblock(int size) {
+        return Math.max(MACROBLOCK_SIZE, Math.round((float) size / MACROBLOCK_SIZE) * MACROBLOCK_SIZE);
+    }
+
+    private static int findTrack(MediaExtractor extractor, String mimePrefix) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith(mimePrefix)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Transcodes the video unless it already is within the target resolution and bitrate.
+     *
+     * @param output where the transcoded video is written, it only appears once complete
+     * @return false if the video was left alone
+     * @throws IOException if the video can't be read or this device can't transcode it
+     */
+    public boolean transcode(Context context, Uri source, File output) throws IOException {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        int rotation;
+        long bitRate;
+        try {
+            retriever.setDataSource(context, source);
+            rotation = parseInt(retriever.extractMetadata(
+                    MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION));
+            bitRate = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE));
+        } catch (RuntimeException e) {
+            throw new IOException("Can't read the metadata of " + source, e);
+        } finally {
+            retriever.release();
+        }
+
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(context, source, null);
+            int videoTrack = findTrack(extractor, "video/");
+            if (videoTrack < 0) {
+                return false;
+            }
+            MediaFormat inputFormat = extractor.getTrackFormat(videoTrack);
+            int width = inputFormat.getInteger(MediaFormat.KEY_WIDTH);
+            int height = inputFormat.getInteger(MediaFormat.KEY_HEIGHT);
+            int shortSide = Math.min(width, height);
+            if (shortSide <= mMaxShortSide && bitRate > 0 && bitRate <= mBitRate) {
+                return false;
+            }
+            float scale = Math.min(1f, (float) mMaxShortSide / shortSide);
+            int outputWidth = roundToMacroblock((int) (width * scale));
+            int outputHeight = roundToMacroblock((int) (height * scale));
+
+            File partial = new File(output.getPath() + ".partial");
+            boolean moved = false;
+            try {
+                transcode(extractor, videoTrack, findTrack(extractor, "audio/"), outputWidth,
+                        outputHeight, rotation, partial);
+                moved = partial.renameTo(output);
+            } finally {
+                if (!moved) {
+                    partial.delete();
+                }
+            }
+            if (!moved) {
+                throw new IOException("Can't move the transcoded video to " + output);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // Codecs report unsupported formats and failures as runtime exceptions.
+            throw new IOException("Can't transcode " + source, e);
+        } finally {
+            extractor.release();
+        }
+    }
+
+    private static int parseInt(String value) {
+        if (TextUtils.isEmpty(value)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void transcode(MediaExtractor extractor, int videoTrack, int audioTrack, int width,
+                           int height, int rotation, File output) throws IOException {
+        MediaFormat inputFormat = extractor.getTrackFormat(videoTrack);
+        MediaFormat outputFormat = MediaFormat.createVideoFormat(OUTPUT_MIME_TYPE, width, height);
+        outputFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+                MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, mBitRate);
+        outputFormat.setInteger(MediaFormat.KEY_FRAME_RATE, mFrameRate);
+        outputFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, mIFrameInterval);
+
+        MediaCodec encoder = null;
+        MediaCodec decoder = null;
+        Surface surface = null;
+        MediaMuxer muxer = null;
+        boolean muxerStarted = false;
+        try {
+            encoder = MediaCodec.createEncoderByType(OUTPUT_MIME_TYPE);
+            encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            surface = encoder.createInputSurface();
+            encoder.start();
+            decoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
+            decoder.configure(inputFormat, surface, null, 0);
+            decoder.setVideoScalingMode(MediaCodec.VIDEO_SCALING_MODE_SCALE_TO_FIT);
+            decoder.start();
+
+            muxer = new MediaMuxer(output.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            muxer.setOrientationHint(rotation);
+            MediaFormat audioFormat = audioTrack < 0 ? null : extractor.getTrackFormat(audioTrack);
+            int videoOutputTrack = -1;
+            int audioOutputTrack = -1;
+
+            extractor.selectTrack(videoTrack);
+            ByteBuffer[] decoderInputs = decoder.getInputBuffers();
+            ByteBuffer[] encoderOutputs = encoder.getOutputBuffers();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+            boolean decoderDone = false;
+            boolean encoderDone = false;
+            while (!encoderDone) {
+                if (!inputDone) {
+                    int index = decoder.dequeueInputBuffer(TIMEOUT_US);
+                    if (index >= 0) {
+                        int size = extractor.readSampleData(decoderInputs[index], 0);
+                        if (size < 0) {
+                            decoder.queueInputBuffer(index, 0, 0, 0,
+                                    MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            decoder.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                if (!decoderDone) {
+                    int index = decoder.dequeueOutputBuffer(info, TIMEOUT_US);
+                    if (index >= 0) {
+                        // Rendering hands the frame and its timestamp on to the encoder.
+                        decoder.releaseOutputBuffer(index, info.size > 0);
+                        if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                            encoder.signalEndOfInputStream();
+                            decoderDone = true;
+                        }
+                    }
+                }
+
+                int index = encoder.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    // Tracks can only be added before the muxer starts, and the video track is
+                    // only known now.
+                    videoOutputTrack = muxer.addTrack(encoder.getOutputFormat());
+                    if (audioFormat != null) {
+                        audioOutputTrack = muxer.addTrack(audioFormat);
+                    }
+                    muxer.start();
+                    muxerStarted = true;
+                } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    encoderOutputs = encoder.getOutputBuffers();
+                } else if (index >= 0) {
+                    ByteBuffer data = encoderOutputs[index];
+                    // Codec config is already part of the output format.
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0) {
+                        if (!muxerStarted) {
+                            throw new IOException("Encoder produced data before its format");
+                        }
+                        data.position(info.offset);
+                        data.limit(info.offset + info.size);
+                        muxer.writeSampleData(videoOutputTrack, data, info);
+                    }
+                    encoder.releaseOutputBuffer(index, false);
+                    encoderDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+
+            if (audioOutputTrack >= 0) {
+                copyAudio(extractor, videoTrack, audioTrack, audioFormat, muxer, audioOutputTrack);
+            }
+        } finally {
+            if (decoder != null) {
+                decoder.release();
+            }
+            if (encoder != null) {
+                encoder.release();
+            }
+            if (surface != null) {
+                surface.release();
+            }
+            if (muxer != null) {
+                try {
+                    if (muxerStarted) {
+                        muxer.stop();
+                    }
+                } catch (IllegalStateException e) {
+                    Log.e(TAG, "Can't finish " + output, e);
+                    output.delete();
+                }
+                muxer.release();
+            }
+        }
+    }
+
+    private static void copyAudio(MediaExtractor extractor, int videoTrack, int audioTrack,
+                                  MediaFormat audioFormat, MediaMuxer muxer, int outputTrack) {
+        extractor.unselectTrack(videoTrack);
+        extractor.selectTrack(audioTrack);
+        extractor.seekTo(0, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+        ByteBuffer buffer = ByteBuffer.allocate(audioFormat.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)
+                ? audioFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE) : DEFAULT_AUDIO_BUFFER_SIZE);
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        int size;
+        while ((size = extractor.readSampleData(buffer, 0)) >= 0) {
+            int flags = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0
+                    ? MediaCodec.BUFFER_FLAG_SYNC_FRAME : 0;
+            info.set(0, size, extractor.getSampleTime(), flags);
+            muxer.writeSampleData(outputTrack, buffer, info);
+            extractor.advance();
+        }
+    }
+}
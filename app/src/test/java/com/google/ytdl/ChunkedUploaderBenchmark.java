@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.ytdl;
+
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.youtube.YouTube;
+import com.google.ytdl.util.ChunkSizer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures upload throughput against a {@link MockResumableEndpoint} on a simulated link, with
+ * adaptive chunks and with fixed chunks of the minimum size. Every chunk pays a round trip for its
+ * 308 response, so the throughput difference is the cost of the round trips saved.
+ */
+public class ChunkedUploaderBenchmark {
+    private static final int FILE_SIZE = 4 * 1024 * 1024;
+    private static final long ROUND_TRIP_MS = 100;
+    private static final long BYTES_PER_SECOND = 4 * 1024 * 1024;
+
+    private File mFile;
+    private RandomAccessFile mRandomAccessFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("benchmark", ".mp4");
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mRandomAccessFile.setLength(FILE_SIZE);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mRandomAccessFile.close();
+        mFile.delete();
+    }
+
+    /**
+     * @return bytes per second
+     */
+    private long measure(String name, ChunkSizer chunkSizer) throws IOException {
+        MockResumableEndpoint endpoint = new MockResumableEndpoint(FILE_SIZE);
+        endpoint.mRoundTripMs = ROUND_TRIP_MS;
+        endpoint.mBytesPerSecond = BYTES_PER_SECOND;
+        YouTube youtube = new YouTube.Builder(endpoint, GsonFactory.getDefaultInstance(), null)
+                .setApplicationName("ytdl-benchmark").build();
+        ChunkedUploader uploader = new ChunkedUploader(youtube, chunkSizer);
+
+        long start = System.nanoTime();
+        uploader.upload(MockResumableEndpoint.SESSION_URL, mRandomAccessFile.getChannel(),
+                FILE_SIZE);
+        long elapsedNanos = System.nanoTime() - start;
+
+        assertEquals(FILE_SIZE, endpoint.mReceived.size());
+        long bytesPerSecond = FILE_SIZE * 1000000000L / elapsedNanos;
+        System.out.println(name + ": " + endpoint.mChunkLengths.size() + " chunks, "
+                + bytesPerSecond / 1024 + " KiB/s of a " + BYTES_PER_SECOND / 1024
+                + " KiB/s link with " + ROUND_TRIP_MS + " ms round trips");
+        return bytesPerSecond;
+    }
+
+    @Test
+    public void adaptiveAgainstMinimumChunks() throws IOException {
+        long adaptive = measure("Adaptive chunks", new ChunkSizer());
+        long fixed = measure("Fixed " + ChunkSizer.MIN_CHUNK_SIZE / 1024 + " KiB chunks",
+                new ChunkSizer() {
+                    @Override
+                    public synchronized int nextChunkSize() {
+                        return MIN_CHUNK_SIZE;
+                    }
+                });
+        assertTrue(adaptive > fixed);
+    }
+}
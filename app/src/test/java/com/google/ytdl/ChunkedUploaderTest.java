@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.youtube.YouTube;
+import com.google.api.services.youtube.model.Video;
+import com.google.ytdl.util.ChunkSizer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkedUploaderTest {
+    private static final String SESSION_URL = MockResumableEndpoint.SESSION_URL;
+    private static final String VIDEO_ID = MockResumableEndpoint.VIDEO_ID;
+    private static final int FILE_SIZE = 5 * 1024 * 1024 + 123;
+
+    private MockResumableEndpoint mEndpoint;
+    private ChunkedUploader mUploader;
+    private byte[] mData;
+    private File mFile;
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+
+    @Before
+    public void setUp() throws IOException {
+        mData = new byte[FILE_SIZE];
+        new Random(42).nextBytes(mData);
+        mFile = File.createTempFile("upload", ".mp4");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(mData);
+        } finally {
+            out.close();
+        }
+        mRandomAccessFile = new RandomAccessFile(mFile, "r");
+        mChannel = mRandomAccessFile.getChannel();
+
+        mEndpoint = new MockResumableEndpoint(FILE_SIZE);
+        YouTube youtube = new YouTube.Builder(mEndpoint, GsonFactory.getDefaultInstance(), null)
+                .setApplicationName("ytdl-test").build();
+        mUploader = new ChunkedUploader(youtube);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mRandomAccessFile.close();
+        mFile.delete();
+    }
+
+    @Test
+    public void initiateReturnsSessionUrl() throws IOException {
+        final List<String> initiated = new ArrayList<String>();
+        mUploader.addListener(new RecordingListener() {
+            @Override
+            public void onInitiated(String sessionUrl) {
+                initiated.add(sessionUrl);
+            }
+        });
+        String sessionUrl = mUploader.initiate("snippet", "id", new Video(), FILE_SIZE);
+        assertEquals(SESSION_URL, sessionUrl);
+        assertEquals(Arrays.asList(SESSION_URL), initiated);
+        assertEquals(Long.toString(FILE_SIZE), mEndpoint.mUploadContentLength);
+    }
+
+    @Test
+    public void uploadsWholeFileInGranularChunks() throws IOException {
+        RecordingListener listener = new RecordingListener();
+        mUploader.addListener(listener);
+        Video video = mUploader.upload(SESSION_URL, mChannel, FILE_SIZE);
+
+        assertEquals(VIDEO_ID, video.getId());
+        assertArrayEquals(mData, mEndpoint.getReceived());
+        assertTrue(mEndpoint.mChunkLengths.size() > 1);
+        for (int i = 0; i < mEndpoint.mChunkLengths.size() - 1; i++) {
+            assertEquals(0, mEndpoint.mChunkLengths.get(i) % ChunkSizer.CHUNK_GRANULARITY);
+        }
+        assertEquals(Long.valueOf(FILE_SIZE), listener.mProgress.get(listener.mProgress.size() - 1));
+    }
+
+    @Test
+    public void continuesFromCommittedOffsetWhenServerKeepsLess() throws IOException {
+        mEndpoint.mBytesDroppedPerChunk = 1000;
+        Video video = mUploader.upload(SESSION_URL, mChannel, FILE_SIZE);
+
+        assertEquals(VIDEO_ID, video.getId());
+        assertArrayEquals(mData, mEndpoint.getReceived());
+    }
+
+    @Test
+    public void resumeOnlySendsMissingBytes() throws IOException {
+        int committed = 3 * ChunkSizer.CHUNK_GRANULARITY + 17;
+        mEndpoint.mReceived.write(mData, 0, committed);
+        Video video = mUploader.resume(SESSION_URL, mChannel, FILE_SIZE);
+
+        assertEquals(VIDEO_ID, video.getId());
+        assertArrayEquals(mData, mEndpoint.getReceived());
+        assertEquals(FILE_SIZE - committed, mEndpoint.getBytesSent());
+    }
+
+    @Test
+    public void progressFollowsShortCommits() throws IOException {
+        mEndpoint.mBytesDroppedPerChunk = 1000;
+        RecordingListener listener = new RecordingListener();
+        mUploader.addListener(listener);
+        mUploader.upload(SESSION_URL, mChannel, FILE_SIZE);
+
+        // Every chunk but the last was cut short, and progress reports what the server kept.
+        long sent = 0;
+        for (int i = 0; i < mEndpoint.mChunkLengths.size() - 1; i++) {
+            sent += mEndpoint.mChunkLengths.get(i);
+            assertEquals(Long.valueOf(sent - 1000 * (i + 1)), listener.mProgress.get(i));
+        }
+        assertEquals(FILE_SIZE + 1000L * (mEndpoint.mChunkLengths.size() - 1),
+                mEndpoint.getBytesSent());
+    }
+
+    @Test
+    public void missingRangeHeaderStartsOver() throws IOException {
+        mEndpoint.mForgetNext = true;
+        mEndpoint.mForgottenRange = null;
+        Video video = mUploader.upload(SESSION_URL, mChannel, FILE_SIZE);
+
+        assertEquals(VIDEO_ID, video.getId());
+        assertArrayEquals(mData, mEndpoint.getReceived());
+        assertEquals(FILE_SIZE + mEndpoint.mChunkLengths.get(0), mEndpoint.getBytesSent());
+    }
+
+    @Test
+    public void malformedRangeHeaderCountsAsNothingCommitted() throws IOException {
+        String[] malformed = {"bytes=0-", "bytes=0-abc", "bytes=0--5", "bytes=100-200",
+                "bytes 0-100", ""};
+        for (String range : malformed) {
+            setUp();
+            mEndpoint.mForgetNext = true;
+            mEndpoint.mForgottenRange = range;
+            Video video = mUploader.upload(SESSION_URL, mChannel, FILE_SIZE);
+
+            assertEquals(range, VIDEO_ID, video.getId());
+            assertArrayEquals(range, mData, mEndpoint.getReceived());
+            tearDown();
+        }
+    }
+
+    @Test
+    public void resumeWithMalformedRangeSendsWholeFile() throws IOException {
+        mEndpoint.mReceived.write(mData, 0, 3 * ChunkSizer.CHUNK_GRANULARITY);
+        mEndpoint.mForgetNext = true;
+        mEndpoint.mForgottenRange = "bytes=0-garbage";
+        Video video = mUploader.resume(SESSION_URL, mChannel, FILE_SIZE);
+
+        assertEquals(VIDEO_ID, video.getId());
+        assertArrayEquals(mData, mEndpoint.getReceived());
+        assertEquals(FILE_SIZE, mEndpoint.getBytesSent());
+    }
+
+    @Test
+    public void resumeReturnsVideoWhenServerHasEverything() throws IOException {
+        mEndpoint.mReceived.write(mData, 0, FILE_SIZE);
+        Video video = mUploader.resume(SESSION_URL, mChannel, FILE_SIZE);
+
+        assertEquals(VIDEO_ID, video.getId());
+        assertTrue(mEndpoint.mChunkLengths.isEmpty());
+    }
+
+    @Test
+    public void errorResponseThrows() throws IOException {
+        mEndpoint.mFailWithStatus = 503;
+        try {
+            mUploader.upload(SESSION_URL, mChannel, FILE_SIZE);
+            fail();
+        } catch (GoogleJsonResponseException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+    }
+
+    private static class RecordingListener implements ChunkedUploader.Listener {
+        final List<Long> mProgress = new ArrayList<Long>();
+
+        @Override
+        public void onInitiated(String sessionUrl) {
+        }
+
+        @Override
+        public void onProgress(long bytesUploaded, long totalBytes) {
+            mProgress.add(bytesUploaded);
+        }
+
+        @Override
+        public void onWaitingForNetwork() {
+        }
+    }
+}
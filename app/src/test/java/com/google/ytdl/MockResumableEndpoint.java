@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.ytdl;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Resumable upload endpoint that keeps the bytes it receives in memory, see
+ * https://developers.google.com/youtube/v3/guides/using_resumable_upload_protocol
+ * <p/>
+ * It can answer over a simulated link, every request then takes a round trip plus the time its
+ * body needs at the link's bandwidth.
+ */
+class MockResumableEndpoint extends MockHttpTransport {
+    static final String SESSION_URL = "https://upload.example.com/session/1";
+    static final String VIDEO_ID = "abcdefghijk";
+    private static final int STATUS_RESUME_INCOMPLETE = 308;
+
+    final ByteArrayOutputStream mReceived = new ByteArrayOutputStream();
+    final List<Integer> mChunkLengths = new ArrayList<Integer>();
+    private final long mFileSize;
+    /**
+     * bytes at the end of each chunk the server pretends not to have stored
+     */
+    int mBytesDroppedPerChunk;
+    int mFailWithStatus;
+    String mUploadContentLength;
+    /**
+     * if set, the next "Resume Incomplete" response drops everything received so far and carries
+     * this Range header instead of the committed one
+     */
+    boolean mForgetNext;
+    /**
+     * Range header sent by {@link #mForgetNext}, null to send none
+     */
+    String mForgottenRange;
+    long mRoundTripMs;
+    /**
+     * 0 for a link without a bandwidth limit
+     */
+    long mBytesPerSecond;
+
+    MockResumableEndpoint(long fileSize) {
+        mFileSize = fileSize;
+    }
+
+    private static MockLowLevelHttpResponse incomplete(String range) {
+        MockLowLevelHttpResponse response = new MockLowLevelHttpResponse()
+                .setStatusCode(STATUS_RESUME_INCOMPLETE);
+        if (range != null) {
+            response.addHeader("Range", range);
+        }
+        return response;
+    }
+
+    byte[] getReceived() {
+        return mReceived.toByteArray();
+    }
+
+    long getBytesSent() {
+        long sent = 0;
+        for (int length : mChunkLengths) {
+            sent += length;
+        }
+        return sent;
+    }
+
+    private void simulateLink(long bytes) throws IOException {
+        long millis = mRoundTripMs;
+        if (mBytesPerSecond > 0) {
+            millis += bytes * 1000 / mBytesPerSecond;
+        }
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    @Override
+    public LowLevelHttpRequest buildRequest(final String method, String url) {
+        return new MockLowLevelHttpRequest(url) {
+            @Override
+            public LowLevelHttpResponse execute() throws IOException {
+                if (mFailWithStatus != 0) {
+                    return new MockLowLevelHttpResponse().setStatusCode(mFailWithStatus)
+                            .setContentType("application/json")
+                            .setContent("{\"error\":{\"code\":" + mFailWithStatus
+                                    + ",\"message\":\"Backend Error\"}}");
+                }
+                if ("POST".equals(method)) {
+                    simulateLink(0);
+                    mUploadContentLength = getFirstHeaderValue("X-Upload-Content-Length");
+                    return new MockLowLevelHttpResponse().addHeader("Location", SESSION_URL);
+                }
+                return put(this, getFirstHeaderValue("Content-Range"));
+            }
+        };
+    }
+
+    private LowLevelHttpResponse put(MockLowLevelHttpRequest request, String contentRange)
+            throws IOException {
+        String range = contentRange.substring("bytes ".length(), contentRange.indexOf('/'));
+        if (!range.equals("*")) {
+            long first = Long.parseLong(range.substring(0, range.indexOf('-')));
+            assertEquals("chunk must start at the committed offset", mReceived.size(), first);
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            request.getStreamingContent().writeTo(chunk);
+            mChunkLengths.add(chunk.size());
+            simulateLink(chunk.size());
+            byte[] bytes = chunk.toByteArray();
+            int kept = first + bytes.length == mFileSize ? bytes.length
+                    : Math.max(0, bytes.length - mBytesDroppedPerChunk);
+            mReceived.write(bytes, 0, kept);
+        } else {
+            simulateLink(0);
+        }
+        if (mReceived.size() < mFileSize) {
+            if (mForgetNext) {
+                mForgetNext = false;
+                mReceived.reset();
+                return incomplete(mForgottenRange);
+            }
+            return incomplete(mReceived.size() == 0 ? null : "bytes=0-" + (mReceived.size() - 1));
+        }
+        return new MockLowLevelHttpResponse().setContentType("application/json")
+                .setContent("{\"id\":\"" + VIDEO_ID + "\"}");
+    }
+}
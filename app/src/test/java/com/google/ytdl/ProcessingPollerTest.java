@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.ytdl;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.youtube.YouTube;
+import com.google.ytdl.util.UploadJournal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessingPollerTest {
+    private static final String ACCOUNT = "user@example.com";
+    private static final String VIDEO_ID = "abcdefghijk";
+    private static final long UPLOAD_ID = 7;
+
+    private String mProcessingStatus;
+    /**
+     * journal states the callbacks leave, as {@link UploadService} records them
+     */
+    private final Map<Long, UploadJournal.State> mStates = new HashMap<Long, UploadJournal.State>();
+    private boolean mNotified;
+    private ProcessingPoller mPoller;
+
+    @Before
+    public void setUp() {
+        final YouTube youtube = new YouTube.Builder(new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest(url) {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        return new MockLowLevelHttpResponse().setContentType("application/json")
+                                .setContent("{\"items\":[{\"id\":\"" + VIDEO_ID + "\","
+                                        + "\"processingDetails\":{\"processingStatus\":\""
+                                        + mProcessingStatus + "\"}}]}");
+                    }
+                };
+            }
+        }, GsonFactory.getDefaultInstance(), null).setApplicationName("ytdl-test").build();
+
+        mPoller = new ProcessingPoller(new ProcessingPoller.Callbacks() {
+            @Override
+            public YouTube getYouTube(String account) {
+                return youtube;
+            }
+
+            @Override
+            public void onProcessed(long uploadId, String videoId) {
+                mNotified = true;
+                mStates.put(uploadId, UploadJournal.State.COMPLETE);
+            }
+
+            @Override
+            public void onRejected(long uploadId, String videoId) {
+                mStates.put(uploadId, UploadJournal.State.FAILED);
+            }
+
+            @Override
+            public void onAbandoned(long uploadId, String videoId) {
+                mStates.put(uploadId, UploadJournal.State.COMPLETE);
+            }
+
+            @Override
+            public void onIdle() {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mPoller.shutdown();
+    }
+
+    @Test
+    public void failedProcessingLetsTheVideoBeUploadedAgain() {
+        mStates.put(UPLOAD_ID, UploadJournal.State.PROCESSING);
+        mProcessingStatus = "failed";
+        mPoller.track(UPLOAD_ID, ACCOUNT, VIDEO_ID, System.currentTimeMillis());
+        mPoller.poll();
+
+        assertTrue(mPoller.isIdle());
+        assertFalse(mNotified);
+        // A new upload of the same content doesn't find this one, so it isn't deduplicated.
+        assertFalse(mStates.get(UPLOAD_ID).standsInForContent());
+    }
+
+    @Test
+    public void terminatedProcessingLetsTheVideoBeUploadedAgain() {
+        mProcessingStatus = "terminated";
+        mPoller.track(UPLOAD_ID, ACCOUNT, VIDEO_ID, System.currentTimeMillis());
+        mPoller.poll();
+
+        assertEquals(UploadJournal.State.FAILED, mStates.get(UPLOAD_ID));
+        assertFalse(mStates.get(UPLOAD_ID).standsInForContent());
+    }
+
+    @Test
+    public void processedVideoStandsInForItsContent() {
+        mProcessingStatus = "succeeded";
+        mPoller.track(UPLOAD_ID, ACCOUNT, VIDEO_ID, System.currentTimeMillis());
+        mPoller.poll();
+
+        assertTrue(mNotified);
+        assertTrue(mStates.get(UPLOAD_ID).standsInForContent());
+    }
+
+    @Test
+    public void timeoutKeepsTheVideo() {
+        mProcessingStatus = "processing";
+        // Processing started before the process was last killed.
+        mPoller.track(UPLOAD_ID, ACCOUNT, VIDEO_ID,
+                System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(21));
+        mPoller.poll();
+
+        assertTrue(mPoller.isIdle());
+        assertFalse(mNotified);
+        assertEquals(UploadJournal.State.COMPLETE, mStates.get(UPLOAD_ID));
+        assertTrue(mStates.get(UPLOAD_ID).standsInForContent());
+    }
+
+    @Test
+    public void keepsPollingWhileProcessing() {
+        mProcessingStatus = "processing";
+        mPoller.track(UPLOAD_ID, ACCOUNT, VIDEO_ID, System.currentTimeMillis());
+        mPoller.poll();
+
+        assertFalse(mPoller.isIdle());
+        assertNull(mStates.get(UPLOAD_ID));
+    }
+
+    @Test
+    public void onlyFailedAndDuplicateUploadsGiveWay() {
+        for (UploadJournal.State state : UploadJournal.State.values()) {
+            assertEquals(state.name(), state != UploadJournal.State.FAILED
+                    && state != UploadJournal.State.DUPLICATE, state.standsInForContent());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.ytdl;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.youtube.YouTube;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times a videos.list call made with a client built for the call, as the activities used to do,
+ * against one made with a client built once and reused, as {@link YouTubeClients} hands out.
+ * <p/>
+ * The mock transport charges each new transport a simulated connection setup on its first
+ * request, standing in for the TCP and TLS handshakes a reused connection pool saves. With that set
+ * to 0 the difference is only the cost of building the client and its JSON factory.
+ */
+public class YouTubeClientsBenchmark {
+    private static final int WARMUP_CALLS = 200;
+    private static final int MEASURED_CALLS = 20;
+    /**
+     * TCP and TLS handshakes, three round trips of 50 ms
+     */
+    private static final long CONNECTION_SETUP_MS = 150;
+    private static final String RESPONSE = "{\"items\":[{\"id\":\"a\",\"snippet\":{\"title\":\"A\"}},"
+            + "{\"id\":\"b\",\"snippet\":{\"title\":\"B\"}}]}";
+    private static final HttpRequestInitializer NO_CREDENTIAL = new HttpRequestInitializer() {
+        @Override
+        public void initialize(HttpRequest request) {
+        }
+    };
+
+    private static YouTube newClient(long connectionSetupMs) {
+        return YouTubeClients.build(new MockEndpoint(connectionSetupMs), new GsonFactory(),
+                NO_CREDENTIAL);
+    }
+
+    private static void call(YouTube youtube) throws IOException {
+        assertEquals(2, youtube.videos().list("snippet").setId("a,b").execute().getItems().size());
+    }
+
+    /**
+     * @return mean microseconds per call
+     */
+    private static long timeCold(long connectionSetupMs, int calls) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            call(newClient(connectionSetupMs));
+        }
+        return (System.nanoTime() - start) / calls / 1000;
+    }
+
+    /**
+     * @return mean microseconds per call
+     */
+    private static long timeWarm(long connectionSetupMs, int calls) throws IOException {
+        YouTube youtube = newClient(connectionSetupMs);
+        call(youtube);
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            call(youtube);
+        }
+        return (System.nanoTime() - start) / calls / 1000;
+    }
+
+    @Test
+    public void coldAgainstWarmClient() throws IOException {
+        timeCold(0, WARMUP_CALLS);
+        timeWarm(0, WARMUP_CALLS);
+        for (long setupMs : new long[]{0, CONNECTION_SETUP_MS}) {
+            long coldUs = timeCold(setupMs, MEASURED_CALLS);
+            long warmUs = timeWarm(setupMs, MEASURED_CALLS);
+            System.out.println("videos.list with " + setupMs + " ms connection setup: "
+                    + coldUs + " us with a new client, " + warmUs + " us with a cached one");
+        }
+    }
+
+    /**
+     * Answers every request with the same two videos, after a connection setup on the first one.
+     */
+    private static class MockEndpoint extends MockHttpTransport {
+        private final long mConnectionSetupMs;
+        private boolean mConnected;
+
+        MockEndpoint(long connectionSetupMs) {
+            mConnectionSetupMs = connectionSetupMs;
+        }
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) {
+            return new MockLowLevelHttpRequest(url) {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    if (!mConnected) {
+                        mConnected = true;
+                        try {
+                            Thread.sleep(mConnectionSetupMs);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException();
+                        }
+                    }
+                    return new MockLowLevelHttpResponse().setContentType("application/json")
+                            .setContent(RESPONSE);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.ytdl.util;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.youtube.model.Video;
+import com.google.api.services.youtube.model.VideoListResponse;
+import com.google.api.services.youtube.model.VideoSnippet;
+import com.google.api.services.youtube.model.VideoStatus;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures bytes and parsing cost per {@link VideoListResponse} of the uploads grid, for the
+ * recorded full response and for the same videos cut down to {@link ApiFields#GRID_VIDEOS}, which
+ * is what YouTube returns with that mask. Allocation is only reported on JVMs that count it per
+ * thread.
+ */
+public class ApiFieldsBenchmark {
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int MEASURED_ITERATIONS = 500;
+
+    private final JsonFactory mJsonFactory = GsonFactory.getDefaultInstance();
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @return the response as the grid's partial response mask leaves it
+     */
+    private static VideoListResponse mask(VideoListResponse full) {
+        List<Video> videos = new ArrayList<Video>(full.getItems().size());
+        for (Video video : full.getItems()) {
+            VideoSnippet snippet = video.getSnippet();
+            videos.add(new Video().setId(video.getId()).setEtag(video.getEtag())
+                    .setSnippet(new VideoSnippet().setTitle(snippet.getTitle())
+                            .setPublishedAt(snippet.getPublishedAt())
+                            .setTags(snippet.getTags()))
+                    .setStatus(new VideoStatus()
+                            .setPrivacyStatus(video.getStatus().getPrivacyStatus())));
+        }
+        return new VideoListResponse().setEtag(full.getEtag()).setItems(videos);
+    }
+
+    private VideoListResponse parse(byte[] response) throws IOException {
+        return mJsonFactory.fromInputStream(new ByteArrayInputStream(response),
+                VideoListResponse.class);
+    }
+
+    private void measure(String name, byte[] response) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parse(response);
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedStart = allocatedBytes(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            assertEquals(50, parse(response).getItems().size());
+        }
+        long micros = (System.nanoTime() - start) / MEASURED_ITERATIONS / 1000;
+        long allocated = allocatedBytes(threads) - allocatedStart;
+
+        System.out.println(name + ": " + response.length + " bytes, " + micros + " us"
+                + (allocatedStart < 0 ? "" : ", " + allocated / MEASURED_ITERATIONS / 1024
+                + " KiB allocated") + " per response");
+    }
+
+    @Test
+    public void maskedAgainstFullResponse() throws IOException {
+        byte[] full = VideoListParserBenchmark.readRecorded();
+        byte[] masked = mJsonFactory.toString(mask(parse(full)))
+                .getBytes(Charset.forName("UTF-8"));
+        assertTrue(masked.length < full.length);
+
+        measure("Full response", full);
+        measure("Masked with " + ApiFields.GRID_VIDEOS, masked);
+    }
+}
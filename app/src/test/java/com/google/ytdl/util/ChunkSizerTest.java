@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkSizerTest {
+    private static final int MB = 1024 * 1024;
+
+    /**
+     * Uploads a file over a simulated link where each chunk costs one round trip plus its transfer
+     * time, feeding the sizer what the uploader would measure.
+     *
+     * @param fixedChunkSize chunk size to use instead of the sizer's, 0 for the sizer's
+     * @return the effective throughput in bytes per second
+     */
+    private static double simulateUpload(long fileSize, long rttMillis, double bytesPerMilli,
+                                         int fixedChunkSize) {
+        ChunkSizer sizer = new ChunkSizer();
+        sizer.recordRoundTrip(rttMillis);
+        double elapsedMillis = rttMillis;
+        long offset = 0;
+        while (offset < fileSize) {
+            int chunk = fixedChunkSize > 0 ? fixedChunkSize : sizer.nextChunkSize();
+            long length = Math.min(chunk, fileSize - offset);
+            double millis = rttMillis + length / bytesPerMilli;
+            sizer.recordTransfer(length, (long) millis);
+            elapsedMillis += millis;
+            offset += length;
+        }
+        return fileSize * 1000 / elapsedMillis;
+    }
+
+    @Test
+    public void startsWithInitialSize() {
+        assertEquals(4 * ChunkSizer.CHUNK_GRANULARITY, new ChunkSizer().nextChunkSize());
+    }
+
+    @Test
+    public void chunksAreMultiplesOfGranularity() {
+        ChunkSizer sizer = new ChunkSizer();
+        sizer.recordRoundTrip(50);
+        sizer.recordTransfer(1234567, 3000);
+        int size = sizer.nextChunkSize();
+        assertEquals(0, size % ChunkSizer.CHUNK_GRANULARITY);
+    }
+
+    @Test
+    public void slowLinkGetsMinimumChunk() {
+        ChunkSizer sizer = new ChunkSizer();
+        sizer.recordRoundTrip(100);
+        sizer.recordTransfer(1024, 10000);
+        assertEquals(ChunkSizer.MIN_CHUNK_SIZE, sizer.nextChunkSize());
+    }
+
+    @Test
+    public void fastLinkIsCappedAtMaximumChunk() {
+        ChunkSizer sizer = new ChunkSizer();
+        sizer.recordRoundTrip(10);
+        sizer.recordTransfer(100 * MB, 1000);
+        assertEquals(ChunkSizer.MAX_CHUNK_SIZE, sizer.nextChunkSize());
+    }
+
+    @Test
+    public void longRoundTripGrowsChunks() {
+        ChunkSizer nearby = new ChunkSizer();
+        nearby.recordRoundTrip(20);
+        nearby.recordTransfer(MB, 8000);
+        ChunkSizer distant = new ChunkSizer();
+        distant.recordRoundTrip(500);
+        distant.recordTransfer(MB, 8000);
+        assertTrue(distant.nextChunkSize() > nearby.nextChunkSize());
+    }
+
+    @Test
+    public void adaptsToChangingThroughput() {
+        ChunkSizer sizer = new ChunkSizer();
+        sizer.recordRoundTrip(50);
+        sizer.recordTransfer(MB, 8000);
+        int slow = sizer.nextChunkSize();
+        for (int i = 0; i < 10; i++) {
+            sizer.recordTransfer(MB, 1000);
+        }
+        assertTrue(sizer.nextChunkSize() > slow);
+    }
+
+    /**
+     * Adaptive chunks against the fixed minimum chunk MediaHttpUploader would use on a link with
+     * a long round trip, where small chunks spend most of their time waiting for the reply.
+     */
+    @Test
+    public void adaptiveChunksBeatFixedChunksOnHighLatencyLinks() {
+        long fileSize = 256L * MB;
+        long rttMillis = 300;
+        double bytesPerMilli = 2 * MB / 1000.0;
+        double adaptive = simulateUpload(fileSize, rttMillis, bytesPerMilli, 0);
+        double fixed = simulateUpload(fileSize, rttMillis, bytesPerMilli,
+                ChunkSizer.MIN_CHUNK_SIZE);
+        System.out.println("Simulated throughput over a " + rttMillis + " ms link: adaptive "
+                + (long) adaptive + " B/s, fixed " + (long) fixed + " B/s");
+        assertTrue(adaptive > 2 * fixed);
+        // Round trips only take a small share of the time.
+        assertTrue(adaptive > 0.85 * bytesPerMilli * 1000);
+    }
+}
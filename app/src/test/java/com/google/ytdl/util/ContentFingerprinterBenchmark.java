@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.ytdl.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures how long a video takes to fingerprint, against hashing all of it. The file is sparse, so
+ * the times show hashing more than disk reads.
+ */
+public class ContentFingerprinterBenchmark {
+    private static final long FILE_SIZE = 1024 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private File mFile;
+    private RandomAccessFile mRandomAccessFile;
+    private ContentFingerprinter mFingerprinter;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("benchmark", ".bin");
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mRandomAccessFile.setLength(FILE_SIZE);
+        mFingerprinter = new ContentFingerprinter(4);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mFingerprinter.shutdown();
+        mRandomAccessFile.close();
+        mFile.delete();
+    }
+
+    private static long hashAll(FileChannel channel) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long read = 0;
+        int count;
+        while ((count = channel.read(buffer, read)) > 0) {
+            read += count;
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        digest.digest();
+        return read;
+    }
+
+    @Test
+    public void fingerprintAgainstFullHash() throws IOException, NoSuchAlgorithmException {
+        FileChannel channel = mRandomAccessFile.getChannel();
+        // Once to warm up, once measured.
+        mFingerprinter.fingerprint(channel);
+        long start = System.nanoTime();
+        mFingerprinter.fingerprint(channel);
+        long fingerprintNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        assertEquals(FILE_SIZE, hashAll(channel));
+        long fullNanos = System.nanoTime() - start;
+
+        System.out.println("Fingerprint of 1 GB: " + fingerprintNanos / 1000 + " us, SHA-256 of "
+                + "all of it: " + fullNanos / 1000000 + " ms");
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.ytdl.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ContentFingerprinterTest {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    /**
+     * smaller than the 16 sampled blocks together, so every byte is hashed
+     */
+    private static final int MEDIUM_SIZE = 5 * BLOCK_SIZE + 100;
+    /**
+     * large enough to leave gaps between the sampled blocks
+     */
+    private static final int LARGE_SIZE = 64 * BLOCK_SIZE + 3;
+
+    private ContentFingerprinter mFingerprinter;
+    private final List<File> mFiles = new ArrayList<File>();
+
+    @Before
+    public void setUp() {
+        mFingerprinter = new ContentFingerprinter(4);
+    }
+
+    @After
+    public void tearDown() {
+        mFingerprinter.shutdown();
+        for (File file : mFiles) {
+            file.delete();
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(25).nextBytes(data);
+        return data;
+    }
+
+    private String fingerprint(byte[] data) throws IOException {
+        File file = File.createTempFile("fingerprint", ".bin");
+        mFiles.add(file);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            return mFingerprinter.fingerprint(in.getChannel());
+        } finally {
+            in.close();
+        }
+    }
+
+    private String fingerprintChanged(byte[] data, int offset) throws IOException {
+        byte[] changed = data.clone();
+        changed[offset]++;
+        return fingerprint(changed);
+    }
+
+    @Test
+    public void sameContentInAnotherFileMatches() throws IOException {
+        byte[] data = randomBytes(LARGE_SIZE);
+        String fingerprint = fingerprint(data);
+        assertEquals(64, fingerprint.length());
+        assertTrue(fingerprint.matches("[0-9a-f]+"));
+        assertEquals(fingerprint, fingerprint(data.clone()));
+    }
+
+    @Test
+    public void emptyFile() throws IOException {
+        String empty = fingerprint(new byte[0]);
+        assertEquals(empty, fingerprint(new byte[0]));
+        assertNotEquals(empty, fingerprint(new byte[1]));
+    }
+
+    @Test
+    public void sizeIsPartOfFingerprint() throws IOException {
+        byte[] data = randomBytes(LARGE_SIZE);
+        String fingerprint = fingerprint(data);
+        assertNotEquals(fingerprint, fingerprint(Arrays.copyOf(data, LARGE_SIZE + 1)));
+        assertNotEquals(fingerprint, fingerprint(Arrays.copyOf(data, LARGE_SIZE - 1)));
+        // Zeros past the end differ from a shorter file even if the blocks read the same.
+        byte[] small = new byte[10];
+        assertNotEquals(fingerprint(small), fingerprint(new byte[11]));
+    }
+
+    @Test
+    public void smallFilesAreHashedCompletely() throws IOException {
+        byte[] small = randomBytes(1000);
+        String smallFingerprint = fingerprint(small);
+        byte[] medium = randomBytes(MEDIUM_SIZE);
+        String mediumFingerprint = fingerprint(medium);
+        for (int offset = 0; offset < small.length; offset += 97) {
+            assertNotEquals(smallFingerprint, fingerprintChanged(small, offset));
+        }
+        for (int offset = 0; offset < medium.length; offset += BLOCK_SIZE / 3) {
+            assertNotEquals(mediumFingerprint, fingerprintChanged(medium, offset));
+        }
+        assertNotEquals(mediumFingerprint, fingerprintChanged(medium, MEDIUM_SIZE - 1));
+    }
+
+    @Test
+    public void changeInSampledBlockIsDetected() throws IOException {
+        byte[] data = randomBytes(LARGE_SIZE);
+        String fingerprint = fingerprint(data);
+        assertNotEquals(fingerprint, fingerprintChanged(data, 0));
+        // The 9th of the 16 blocks, just past the middle.
+        assertNotEquals(fingerprint,
+                fingerprintChanged(data, (LARGE_SIZE - BLOCK_SIZE) * 8 / 15 + 1));
+        assertNotEquals(fingerprint, fingerprintChanged(data, LARGE_SIZE - 1));
+    }
+
+    @Test
+    public void changeBetweenSampledBlocksIsMissed() throws IOException {
+        byte[] data = randomBytes(LARGE_SIZE);
+        // Past the first block and before the second, which starts about 4 blocks in.
+        assertEquals(fingerprint(data), fingerprintChanged(data, 2 * BLOCK_SIZE));
+    }
+}
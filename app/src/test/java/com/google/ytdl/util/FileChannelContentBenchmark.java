@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import com.google.api.client.http.AbstractInputStreamContent;
+import com.google.api.client.http.InputStreamContent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures CPU time and heap allocation per GB of upload content written to a connection, for
+ * {@link FileChannelContent} and for the buffered {@link InputStreamContent} it replaced.
+ * Allocation is only reported on JVMs that count it per thread.
+ */
+public class FileChannelContentBenchmark {
+    private static final long FILE_SIZE = 64 * 1024 * 1024;
+    /**
+     * one chunk of the largest size the uploader sends
+     */
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final double GB = 1024 * 1024 * 1024;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("benchmark", ".bin");
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(FILE_SIZE);
+        } finally {
+            file.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private void measure(String name, Upload upload) throws IOException {
+        // Once to warm up, once measured.
+        upload.run();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long allocatedStart = allocatedBytes(threads);
+        long written = upload.run();
+        long cpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+        long allocated = allocatedBytes(threads) - allocatedStart;
+
+        assertEquals(FILE_SIZE, written);
+        double perGb = GB / written;
+        System.out.println(name + ": " + (long) (cpuNanos * perGb / 1000000) + " ms CPU per GB"
+                + (allocatedStart < 0 ? "" : ", " + (long) (allocated * perGb / 1024)
+                + " KiB allocated per GB"));
+    }
+
+    @Test
+    public void fileChannelAgainstBufferedStream() throws IOException {
+        measure("FileChannelContent", new Upload() {
+            @Override
+            public long run() throws IOException {
+                RandomAccessFile file = new RandomAccessFile(mFile, "r");
+                try {
+                    FileChannel channel = file.getChannel();
+                    CountingOutputStream out = new CountingOutputStream();
+                    for (long offset = 0; offset < FILE_SIZE; offset += CHUNK_SIZE) {
+                        new FileChannelContent("video/*", channel, offset,
+                                Math.min(CHUNK_SIZE, FILE_SIZE - offset)).writeTo(out);
+                    }
+                    return out.mCount;
+                } finally {
+                    file.close();
+                }
+            }
+        });
+        measure("InputStreamContent", new Upload() {
+            @Override
+            public long run() throws IOException {
+                AbstractInputStreamContent content = new InputStreamContent("video/*",
+                        new BufferedInputStream(new FileInputStream(mFile)))
+                        .setLength(FILE_SIZE);
+                CountingOutputStream out = new CountingOutputStream();
+                content.writeTo(out);
+                return out.mCount;
+            }
+        });
+    }
+
+    private interface Upload {
+        /**
+         * @return bytes written
+         */
+        long run() throws IOException;
+    }
+
+    /**
+     * Stands in for the connection, drops the bytes.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        long mCount;
+
+        @Override
+        public void write(int b) {
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            mCount += len;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FileChannelContentTest {
+    /**
+     * spans several of the content's 64 KiB buffers
+     */
+    private static final int FILE_SIZE = 300 * 1024 + 7;
+
+    private byte[] mData;
+    private File mFile;
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+
+    @Before
+    public void setUp() throws IOException {
+        mData = new byte[FILE_SIZE];
+        new Random(21).nextBytes(mData);
+        mFile = File.createTempFile("content", ".bin");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(mData);
+        } finally {
+            out.close();
+        }
+        mRandomAccessFile = new RandomAccessFile(mFile, "r");
+        mChannel = mRandomAccessFile.getChannel();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mRandomAccessFile.close();
+        mFile.delete();
+    }
+
+    private byte[] write(FileChannelContent content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private byte[] range(int offset, int length) {
+        return Arrays.copyOfRange(mData, offset, offset + length);
+    }
+
+    @Test
+    public void writesWholeFile() throws IOException {
+        FileChannelContent content = new FileChannelContent("video/*", mChannel, 0, FILE_SIZE);
+        assertEquals(FILE_SIZE, content.getLength());
+        assertEquals("video/*", content.getType());
+        assertArrayEquals(mData, write(content));
+    }
+
+    @Test
+    public void writesRangeFromAnyOffset() throws IOException {
+        int offset = 100 * 1024 + 3;
+        int length = 150 * 1024 + 11;
+        assertArrayEquals(range(offset, length),
+                write(new FileChannelContent("video/*", mChannel, offset, length)));
+    }
+
+    @Test
+    public void writesSameBytesWhenRetried() throws IOException {
+        FileChannelContent content = new FileChannelContent("video/*", mChannel, 17, 70000);
+        assertTrue(content.retrySupported());
+        byte[] first = write(content);
+        assertArrayEquals(first, write(content));
+        assertArrayEquals(range(17, 70000), first);
+    }
+
+    @Test
+    public void doesNotMoveChannelPosition() throws IOException {
+        mChannel.position(42);
+        write(new FileChannelContent("video/*", mChannel, 1000, 5000));
+        assertEquals(42, mChannel.position());
+    }
+
+    @Test
+    public void emptyRangeWritesNothing() throws IOException {
+        assertEquals(0, write(new FileChannelContent("video/*", mChannel, 10, 0)).length);
+    }
+
+    @Test
+    public void throwsIfFileEndsEarly() throws IOException {
+        try {
+            write(new FileChannelContent("video/*", mChannel, FILE_SIZE - 10, 20));
+            fail();
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void inputStreamReadsRange() throws IOException {
+        int offset = 65536 - 5;
+        int length = 70000;
+        InputStream in = new FileChannelContent("video/*", mChannel, offset, length)
+                .getInputStream();
+        assertEquals(length, in.available());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int first = in.read();
+        out.write(first);
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        assertArrayEquals(range(offset, length), out.toByteArray());
+        assertEquals(-1, in.read());
+        assertEquals(0, in.available());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.ytdl.util;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Drives upload progress at chunk rate, the way {@link com.google.ytdl.ChunkedUploader} reports
+ * it, and measures posts and heap allocation per upload with coalescing on and off. Each post
+ * formats the notification title as {@link com.google.ytdl.UploadProgressNotifier} does, the
+ * platform's notify() is left out, its cost shows up as NOTIFICATION_US on devices. Allocation is
+ * only reported on JVMs that count it per thread.
+ */
+public class ProgressThrottleBenchmark {
+    private static final long FILE_SIZE = 1024L * 1024 * 1024;
+    /**
+     * the smallest chunk, the most callbacks per upload
+     */
+    private static final int CHUNK_SIZE = ChunkSizer.MIN_CHUNK_SIZE;
+    /**
+     * 256 KiB at 10 MiB/s
+     */
+    private static final long CHUNK_MS = 25;
+    private static final String TITLE = "YouTube upload";
+
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of posts
+     */
+    private static int upload(ProgressThrottle throttle) {
+        int posts = 0;
+        int titleLength = 0;
+        long now = 0;
+        for (long uploaded = 0; uploaded < FILE_SIZE; ) {
+            uploaded = Math.min(FILE_SIZE, uploaded + CHUNK_SIZE);
+            now += CHUNK_MS;
+            if (throttle.onProgress(now, uploaded, FILE_SIZE)) {
+                String title = TITLE + throttle.getLastPercent() + "%";
+                titleLength += title.length();
+                posts++;
+            }
+        }
+        // Keeps the titles from being optimized away.
+        return titleLength > 0 ? posts : -1;
+    }
+
+    private static void measure(String name, long intervalMs, int stepPercent) {
+        // Once to warm up, once measured.
+        upload(new ProgressThrottle(intervalMs, stepPercent));
+        ProgressThrottle throttle = new ProgressThrottle(intervalMs, stepPercent);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedStart = allocatedBytes(threads);
+        int posts = upload(throttle);
+        long allocated = allocatedBytes(threads) - allocatedStart;
+
+        long callbacks = (FILE_SIZE + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        System.out.println(name + ": " + posts + " posts for " + callbacks + " callbacks per GB"
+                + (allocatedStart < 0 ? "" : ", " + allocated / callbacks
+                + " bytes allocated per callback"));
+    }
+
+    @Test
+    public void coalescingOnAndOff() {
+        measure("Coalesced", 500, 1);
+        measure("Not coalesced", 0, 0);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.ytdl.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressThrottleTest {
+    private static final long INTERVAL_MS = 500;
+    private static final int STEP_PERCENT = 1;
+    private static final long TOTAL = 1000000;
+
+    private final ProgressThrottle mThrottle = new ProgressThrottle(INTERVAL_MS, STEP_PERCENT);
+
+    @Test
+    public void firstAndFinalUpdatesAlwaysPost() {
+        assertTrue(mThrottle.onProgress(0, 0, TOTAL));
+        assertEquals(0, mThrottle.getLastPercent());
+        assertTrue(mThrottle.onProgress(1, TOTAL, TOTAL));
+        assertEquals(100, mThrottle.getLastPercent());
+    }
+
+    @Test
+    public void waitsForInterval() {
+        assertTrue(mThrottle.onProgress(1000, 0, TOTAL));
+        assertFalse(mThrottle.onProgress(1000 + INTERVAL_MS - 1, TOTAL / 2, TOTAL));
+        assertEquals(0, mThrottle.getLastPercent());
+        assertTrue(mThrottle.onProgress(1000 + INTERVAL_MS, TOTAL / 2, TOTAL));
+        assertEquals(50, mThrottle.getLastPercent());
+    }
+
+    @Test
+    public void waitsForStep() {
+        assertTrue(mThrottle.onProgress(0, TOTAL / 10, TOTAL));
+        assertFalse(mThrottle.onProgress(10 * INTERVAL_MS, TOTAL / 10 + TOTAL / 200, TOTAL));
+        assertTrue(mThrottle.onProgress(20 * INTERVAL_MS, TOTAL / 10 + TOTAL / 100, TOTAL));
+        assertEquals(11, mThrottle.getLastPercent());
+    }
+
+    @Test
+    public void otherPostsCountAgainstInterval() {
+        assertTrue(mThrottle.onProgress(0, 0, TOTAL));
+        mThrottle.onPosted(1000);
+        assertFalse(mThrottle.onProgress(1000 + INTERVAL_MS - 1, TOTAL / 2, TOTAL));
+        assertTrue(mThrottle.onProgress(1000 + INTERVAL_MS, TOTAL / 2, TOTAL));
+    }
+
+    @Test
+    public void unlimitedThrottlePostsEveryUpdate() {
+        ProgressThrottle throttle = new ProgressThrottle(0, 0);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(throttle.onProgress(0, 0, TOTAL));
+        }
+    }
+
+    @Test
+    public void filesAbove2GbReportCorrectPercent() {
+        long total = 3L * 1024 * 1024 * 1024;
+        assertEquals(50, ProgressThrottle.percent(total / 2, total));
+        assertEquals(99, ProgressThrottle.percent(total - 1, total));
+        assertEquals(0, ProgressThrottle.percent(0, 0));
+    }
+}
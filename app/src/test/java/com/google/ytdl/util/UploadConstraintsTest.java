@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UploadConstraintsTest {
+    private static final long UNMETERED_ABOVE = 100;
+    private static final long MIN_BANDWIDTH = 1000;
+    private static final long SMALL_FILE = 50;
+    private static final long LARGE_FILE = 500;
+    /**
+     * how long a waiting upload is given to notice a change, or to show it didn't move
+     */
+    private static final long WAIT_MS = 200;
+
+    private static final ConnectivitySource.State DISCONNECTED =
+            new ConnectivitySource.State(false, false, false, ConnectivitySource.State.UNKNOWN_BANDWIDTH);
+    private static final ConnectivitySource.State WIFI =
+            new ConnectivitySource.State(true, false, false, ConnectivitySource.State.UNKNOWN_BANDWIDTH);
+    private static final ConnectivitySource.State CELLULAR =
+            new ConnectivitySource.State(true, true, false, 5000);
+
+    private FakeConnectivitySource mSource;
+    private UploadConstraints mConstraints;
+
+    @Before
+    public void setUp() {
+        mSource = new FakeConnectivitySource(DISCONNECTED);
+        mConstraints = new UploadConstraints(mSource, UNMETERED_ABOVE, MIN_BANDWIDTH, false);
+        mConstraints.start();
+    }
+
+    /**
+     * Starts a thread waiting for the constraints and returns a latch counted down once it is let
+     * through.
+     */
+    private CountDownLatch awaitInBackground(final long fileSize) {
+        final CountDownLatch released = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mConstraints.await(fileSize);
+                    released.countDown();
+                } catch (InterruptedIOException e) {
+                    // the test is over
+                }
+            }
+        }).start();
+        return released;
+    }
+
+    @Test
+    public void startListensAndStopStops() {
+        assertSame(mConstraints, mSource.mListener);
+        mConstraints.stop();
+        assertNull(mSource.mListener);
+    }
+
+    @Test
+    public void requiresConnection() {
+        assertFalse(mConstraints.isSatisfied(SMALL_FILE));
+        mSource.change(WIFI);
+        assertTrue(mConstraints.isSatisfied(SMALL_FILE));
+        assertTrue(mConstraints.isSatisfied(LARGE_FILE));
+    }
+
+    @Test
+    public void largeFilesWaitForUnmeteredNetwork() {
+        mSource.change(CELLULAR);
+        assertTrue(mConstraints.isSatisfied(SMALL_FILE));
+        assertFalse(mConstraints.isSatisfied(LARGE_FILE));
+    }
+
+    @Test
+    public void meteredNetworksCanBeAllowedForEveryFile() {
+        UploadConstraints constraints = new UploadConstraints(
+                new FakeConnectivitySource(CELLULAR), -1, MIN_BANDWIDTH, false);
+        constraints.start();
+        assertTrue(constraints.isSatisfied(LARGE_FILE));
+    }
+
+    @Test
+    public void requiresMinimumBandwidthWhenKnown() {
+        mSource.change(new ConnectivitySource.State(true, true, false, MIN_BANDWIDTH - 1));
+        assertFalse(mConstraints.isSatisfied(SMALL_FILE));
+        mSource.change(new ConnectivitySource.State(true, true, false, MIN_BANDWIDTH));
+        assertTrue(mConstraints.isSatisfied(SMALL_FILE));
+    }
+
+    @Test
+    public void canRequireCharging() {
+        UploadConstraints constraints = new UploadConstraints(mSource, UNMETERED_ABOVE,
+                MIN_BANDWIDTH, true);
+        constraints.start();
+        mSource.change(WIFI);
+        assertFalse(constraints.isSatisfied(SMALL_FILE));
+        mSource.change(new ConnectivitySource.State(true, false, true,
+                ConnectivitySource.State.UNKNOWN_BANDWIDTH));
+        assertTrue(constraints.isSatisfied(SMALL_FILE));
+    }
+
+    @Test
+    public void awaitReturnsAtOnceWhenSatisfied() throws InterruptedIOException {
+        mSource.change(WIFI);
+        mConstraints.await(LARGE_FILE);
+    }
+
+    @Test
+    public void awaitWakesUpWhenNetworkAllowsUpload() throws InterruptedException {
+        CountDownLatch released = awaitInBackground(LARGE_FILE);
+        assertFalse(released.await(WAIT_MS, TimeUnit.MILLISECONDS));
+
+        // Connected, but metered, isn't enough for a large file.
+        mSource.change(CELLULAR);
+        assertFalse(released.await(WAIT_MS, TimeUnit.MILLISECONDS));
+
+        mSource.change(WIFI);
+        assertTrue(released.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void awaitWakesEveryWaitingUpload() throws InterruptedException {
+        CountDownLatch first = awaitInBackground(SMALL_FILE);
+        CountDownLatch second = awaitInBackground(SMALL_FILE);
+        mSource.change(CELLULAR);
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void awaitThrowsWhenInterrupted() throws InterruptedException {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mConstraints.await(SMALL_FILE);
+                } catch (InterruptedIOException e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        interrupted.countDown();
+                    }
+                }
+            }
+        });
+        thread.start();
+        thread.interrupt();
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Connectivity that only changes when the test says so.
+     */
+    private static class FakeConnectivitySource implements ConnectivitySource {
+        private volatile State mState;
+        volatile Listener mListener;
+
+        FakeConnectivitySource(State state) {
+            mState = state;
+        }
+
+        void change(State state) {
+            mState = state;
+            Listener listener = mListener;
+            if (listener != null) {
+                listener.onStateChanged(state);
+            }
+        }
+
+        @Override
+        public State getState() {
+            return mState;
+        }
+
+        @Override
+        public void setListener(Listener listener) {
+            mListener = listener;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VideoListDiffTest {
+    private static VideoData video(String id, String etag) {
+        return new VideoData(id, etag, "Video " + id, VideoData.PRIVACY_PUBLIC, 0, null);
+    }
+
+    private static List<VideoData> videos(String... ids) {
+        List<VideoData> videos = new ArrayList<VideoData>(ids.length);
+        for (String id : ids) {
+            videos.add(video(id, "etag-" + id));
+        }
+        return videos;
+    }
+
+    @Test
+    public void sameContentComparesIdAndEtag() {
+        assertTrue(VideoListDiff.isSameContent(video("a", "1"), video("a", "1")));
+        assertTrue(VideoListDiff.isSameContent(video("a", null), video("a", null)));
+        assertTrue(VideoListDiff.isSameContent(null, null));
+        assertFalse(VideoListDiff.isSameContent(video("a", "1"), video("a", "2")));
+        assertFalse(VideoListDiff.isSameContent(video("a", "1"), video("b", "1")));
+        assertFalse(VideoListDiff.isSameContent(video("a", null), video("a", "1")));
+        assertFalse(VideoListDiff.isSameContent(null, video("a", "1")));
+        assertFalse(VideoListDiff.isSameContent(video("a", "1"), null));
+    }
+
+    @Test
+    public void identicalListsHaveNoChanges() {
+        VideoListDiff.Result result = VideoListDiff.calculate(videos("a", "b", "c"),
+                videos("a", "b", "c"));
+        assertFalse(result.hasChanges());
+    }
+
+    @Test
+    public void findsInsertedAndRemovedVideos() {
+        VideoListDiff.Result result = VideoListDiff.calculate(videos("a", "b", "c"),
+                videos("a", "c", "d"));
+        assertEquals(Arrays.asList("d"), result.inserted);
+        assertEquals(Arrays.asList("b"), result.removed);
+        assertTrue(result.changed.isEmpty());
+        assertFalse(result.reordered);
+        assertTrue(result.hasChanges());
+    }
+
+    @Test
+    public void findsChangedVideos() {
+        List<VideoData> newVideos = videos("a", "b", "c");
+        newVideos.set(1, video("b", "edited"));
+        VideoListDiff.Result result = VideoListDiff.calculate(videos("a", "b", "c"), newVideos);
+        assertEquals(Arrays.asList("b"), result.changed);
+        assertTrue(result.inserted.isEmpty());
+        assertTrue(result.removed.isEmpty());
+        assertFalse(result.reordered);
+    }
+
+    @Test
+    public void findsReorderedVideos() {
+        VideoListDiff.Result result = VideoListDiff.calculate(videos("a", "b", "c"),
+                videos("c", "a", "b"));
+        assertTrue(result.reordered);
+        assertTrue(result.inserted.isEmpty());
+        assertTrue(result.removed.isEmpty());
+    }
+
+    @Test
+    public void insertionsAndRemovalsAloneDontReorder() {
+        VideoListDiff.Result result = VideoListDiff.calculate(videos("a", "b", "c", "d"),
+                videos("x", "a", "c", "y", "d"));
+        assertFalse(result.reordered);
+        assertEquals(Arrays.asList("x", "y"), result.inserted);
+        assertEquals(Arrays.asList("b"), result.removed);
+    }
+
+    @Test
+    public void emptyLists() {
+        assertFalse(VideoListDiff.calculate(videos(), videos()).hasChanges());
+        assertEquals(Arrays.asList("a"), VideoListDiff.calculate(videos(), videos("a")).inserted);
+        assertEquals(Arrays.asList("a"), VideoListDiff.calculate(videos("a"), videos()).removed);
+    }
+
+    @Test
+    public void diffsThousandVideos() {
+        String[] ids = new String[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "video" + i;
+        }
+        List<VideoData> oldVideos = videos(ids);
+        List<VideoData> newVideos = new ArrayList<VideoData>(oldVideos);
+        newVideos.remove(500);
+        newVideos.set(10, video("video10", "edited"));
+        newVideos.add(0, video("new", "etag-new"));
+
+        VideoListDiff.Result result = VideoListDiff.calculate(oldVideos, newVideos);
+        assertEquals(Arrays.asList("new"), result.inserted);
+        assertEquals(Arrays.asList("video500"), result.removed);
+        assertEquals(Arrays.asList("video10"), result.changed);
+        assertFalse(result.reordered);
+
+        Collections.reverse(newVideos);
+        result = VideoListDiff.calculate(oldVideos, newVideos);
+        assertTrue(result.reordered);
+        assertEquals(new HashSet<String>(Arrays.asList("video10")), new HashSet<String>(result.changed));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.youtube.model.VideoListResponse;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times the streaming parser against parsing the generated model, over the recorded 50-item
+ * response. Each is warmed up first, then the mean time per response is printed.
+ */
+public class VideoListParserBenchmark {
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int MEASURED_ITERATIONS = 500;
+
+    static byte[] readRecorded() throws IOException {
+        InputStream in = VideoListParserBenchmark.class
+                .getResourceAsStream(VideoListParserTest.RECORDED_RESPONSE);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return mean nanoseconds per run after warming up
+     */
+    private static long time(Parse parse) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parse.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            parse.run();
+        }
+        return (System.nanoTime() - start) / MEASURED_ITERATIONS;
+    }
+
+    @Test
+    public void streamingParserAgainstModel() throws IOException {
+        final byte[] response = readRecorded();
+        final JsonFactory jsonFactory = GsonFactory.getDefaultInstance();
+        final VideoListParser parser = new VideoListParser(jsonFactory);
+
+        long streamingNanos = time(new Parse() {
+            @Override
+            public int run() throws IOException {
+                return parser.parse(new ByteArrayInputStream(response)).videos.size();
+            }
+        });
+        long modelNanos = time(new Parse() {
+            @Override
+            public int run() throws IOException {
+                return jsonFactory.createJsonParser(new ByteArrayInputStream(response))
+                        .parseAndClose(VideoListResponse.class).getItems().size();
+            }
+        });
+
+        System.out.println("Parsing 50 videos: streaming " + streamingNanos / 1000 + " us, model "
+                + modelNanos / 1000 + " us");
+        assertEquals(50, parser.parse(new ByteArrayInputStream(response)).videos.size());
+    }
+
+    private interface Parse {
+        /**
+         * @return the number of videos parsed, so the work can't be optimized away
+         */
+        int run() throws IOException;
+    }
+}
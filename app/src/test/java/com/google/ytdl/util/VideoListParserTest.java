@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.ytdl.util;
+
+import com.google.api.client.json.gson.GsonFactory;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VideoListParserTest {
+    /**
+     * videos.list("id,snippet,status") response for 50 videos, without a field mask
+     */
+    static final String RECORDED_RESPONSE = "/videos_list_response.json";
+
+    private final VideoListParser mParser = new VideoListParser(GsonFactory.getDefaultInstance());
+
+    private static InputStream json(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    private VideoListParser.Result parseRecorded() throws IOException {
+        return mParser.parse(getClass().getResourceAsStream(RECORDED_RESPONSE));
+    }
+
+    @Test
+    public void parsesRecordedResponse() throws IOException {
+        VideoListParser.Result result = parseRecorded();
+
+        assertEquals("\"XI7nbFXulYBIpL0ayR_gDh3eu1k/Bp0Xl6i5lY7SX5hbDhZVk3OhK2E\"", result.etag);
+        assertEquals(50, result.videos.size());
+        VideoData first = result.videos.get(0);
+        assertEquals("U89K1D5a0HE", first.getYouTubeId());
+        assertEquals("\"XI7nbFXulYBIpL0ayR_gDh3eu1k/MO66iv9b4-b8p6k_csDZVefZO9j\"", first.getEtag());
+        assertEquals("Squash serve serve", first.getTitle());
+        assertTrue(first.isPublic());
+        assertEquals(Arrays.asList("ytdl", "club", "squash", "ytdl-PLKkaVE-tN"), first.getTags());
+    }
+
+    @Test
+    public void readsFieldsWhateverTheirOrder() throws IOException {
+        // The second item lists its snippet fields in reverse, tags come before the title.
+        VideoData second = parseRecorded().videos.get(1);
+        assertEquals("DOmlpFbYfog", second.getYouTubeId());
+        assertEquals("Practice serve final practice club", second.getTitle());
+        assertEquals(1422839233000L, second.getPublishedAt());
+    }
+
+    @Test
+    public void parsesRfc3339DatesWithFractionsAndOffsets() throws IOException {
+        // 2015-01-01T00:00:00.650+02:00
+        assertEquals(1420063200650L, parseRecorded().videos.get(0).getPublishedAt());
+    }
+
+    @Test
+    public void missingTagsAreEmpty() throws IOException {
+        VideoData untagged = parseRecorded().videos.get(1);
+        assertEquals(Collections.<String>emptyList(), untagged.getTags());
+        assertTrue(!untagged.hasTag("ytdl"));
+    }
+
+    @Test
+    public void decodesEscapedText() throws IOException {
+        assertEquals("Finale \u2014 \u201cbest\u201d rally & more",
+                parseRecorded().videos.get(7).getTitle());
+    }
+
+    @Test
+    public void readsEveryPrivacyStatus() throws IOException {
+        VideoListParser.Result result = parseRecorded();
+        int unlisted = 0;
+        int privateVideos = 0;
+        for (VideoData video : result.videos) {
+            if ("unlisted".equals(video.getPrivacyStatus())) {
+                unlisted++;
+            } else if ("private".equals(video.getPrivacyStatus())) {
+                privateVideos++;
+            }
+        }
+        assertEquals(10, unlisted);
+        assertEquals(10, privateVideos);
+    }
+
+    @Test
+    public void internsRepeatedValues() throws IOException {
+        VideoListParser.Result result = parseRecorded();
+        assertSame(result.videos.get(0).getPrivacyStatus(), result.videos.get(2).getPrivacyStatus());
+        assertSame(result.videos.get(0).getTags().get(0), result.videos.get(2).getTags().get(0));
+    }
+
+    @Test
+    public void skipsUnknownNestedFields() throws IOException {
+        VideoListParser.Result result = mParser.parse(json("{\"kind\":\"youtube#videoListResponse\","
+                + "\"items\":[{\"id\":\"a\",\"snippet\":{\"thumbnails\":{\"default\":{\"url\":"
+                + "\"x\",\"width\":120}},\"title\":\"First\",\"tags\":[\"t\"]},\"contentDetails\":"
+                + "{\"duration\":\"PT1M\",\"regionRestriction\":{\"blocked\":[\"DE\"]}},"
+                + "\"status\":{\"embeddable\":true,\"privacyStatus\":\"private\"}},"
+                + "{\"id\":\"b\",\"status\":{\"privacyStatus\":\"public\"}}],"
+                + "\"etag\":\"e\"}"));
+
+        assertEquals("e", result.etag);
+        assertEquals(2, result.videos.size());
+        VideoData first = result.videos.get(0);
+        assertEquals("a", first.getYouTubeId());
+        assertEquals("First", first.getTitle());
+        assertEquals("private", first.getPrivacyStatus());
+        assertEquals(Arrays.asList("t"), first.getTags());
+        VideoData second = result.videos.get(1);
+        assertEquals("b", second.getYouTubeId());
+        assertEquals("", second.getTitle());
+        assertEquals(0, second.getPublishedAt());
+        assertNull(second.getEtag());
+    }
+
+    @Test
+    public void emptyResponseHasNoVideos() throws IOException {
+        VideoListParser.Result result = mParser.parse(json("{\"etag\":\"e\",\"items\":[]}"));
+        assertEquals("e", result.etag);
+        assertTrue(result.videos.isEmpty());
+        assertTrue(mParser.parse(json("{}")).videos.isEmpty());
+    }
+
+    @Test
+    public void rejectsNonObjectResponse() throws IOException {
+        try {
+            mParser.parse(json("[]"));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}